@@ -0,0 +1,222 @@
+/*******************************************************************************
+ * BEGIN COPYRIGHT NOTICE
+ * 
+ * Copyright [2011] [Rodrigo Lemos]
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * END COPYRIGHT NOTICE
+ ******************************************************************************/
+package objectexplorer;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * The number of instances and the shallow size, in bytes, of the objects of
+ * each class found in an object graph.
+ *
+ * <p>Classes are kept in a single open-addressed table alongside primitive
+ * arrays of counts and sizes, so that adding an object allocates nothing.
+ * {@link Entry Entries} are only created when the histogram is read. Not
+ * thread-safe while it is being built.
+ *
+ * @see MemoryMeasurer#measureHistogram(Object)
+ */
+public final class ClassHistogram {
+  private static final int INITIAL_CAPACITY = 64;
+
+  private Class<?>[] classes = new Class<?>[INITIAL_CAPACITY];
+  private long[] counts = new long[INITIAL_CAPACITY];
+  private long[] bytes = new long[INITIAL_CAPACITY];
+  private int size;
+  private long totalCount;
+  private long totalBytes;
+
+  ClassHistogram() { }
+
+  /**
+   * Records an instance of the given class, of the given size.
+   */
+  void add(Class<?> type, long instanceBytes) {
+    int slot = slotOf(type);
+    if (classes[slot] == null) {
+      classes[slot] = type;
+      if (++size > classes.length * 2 / 3) {
+        grow();
+        slot = slotOf(type);
+      }
+    }
+    counts[slot]++;
+    bytes[slot] += instanceBytes;
+    totalCount++;
+    totalBytes += instanceBytes;
+  }
+
+  // the slot of the class, or of the empty slot where it would go
+  private int slotOf(Class<?> type) {
+    int mask = classes.length - 1;
+    int i = System.identityHashCode(type) & mask;
+    while (classes[i] != null && classes[i] != type) {
+      i = (i + 1) & mask;
+    }
+    return i;
+  }
+
+  private void grow() {
+    Class<?>[] oldClasses = classes;
+    long[] oldCounts = counts;
+    long[] oldBytes = bytes;
+    classes = new Class<?>[oldClasses.length * 2];
+    counts = new long[classes.length];
+    bytes = new long[classes.length];
+    for (int i = 0; i < oldClasses.length; i++) {
+      if (oldClasses[i] == null) continue;
+      int slot = slotOf(oldClasses[i]);
+      classes[slot] = oldClasses[i];
+      counts[slot] = oldCounts[i];
+      bytes[slot] = oldBytes[i];
+    }
+  }
+
+  /**
+   * Returns the number of distinct classes.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the number of instances of all classes.
+   */
+  public long getTotalCount() {
+    return totalCount;
+  }
+
+  /**
+   * Returns the size of the instances of all classes, in bytes.
+   */
+  public long getTotalBytes() {
+    return totalBytes;
+  }
+
+  /**
+   * Returns the number of instances of the given class (not counting
+   * instances of its subclasses).
+   */
+  public long getCount(Class<?> type) {
+    int slot = slotOf(type);
+    return classes[slot] == null ? 0 : counts[slot];
+  }
+
+  /**
+   * Returns the size of the instances of the given class (not counting
+   * instances of its subclasses), in bytes.
+   */
+  public long getBytes(Class<?> type) {
+    int slot = slotOf(type);
+    return classes[slot] == null ? 0 : bytes[slot];
+  }
+
+  /**
+   * Returns the entries of the {@code n} classes whose instances take the
+   * most bytes, from the largest down (classes of the same size are ordered
+   * by number of instances, then by name).
+   */
+  public List<Entry> top(int n) {
+    Preconditions.checkArgument(n >= 0, "Negative number of entries");
+    List<Entry> entries = Lists.newArrayListWithCapacity(size);
+    for (int i = 0; i < classes.length; i++) {
+      if (classes[i] != null) entries.add(new Entry(classes[i], counts[i], bytes[i]));
+    }
+    Collections.sort(entries, largestFirst);
+    return ImmutableList.copyOf(entries.subList(0, Math.min(n, entries.size())));
+  }
+
+  /**
+   * Returns the entries of all classes, from the largest down.
+   *
+   * @see #top(int)
+   */
+  public List<Entry> entries() {
+    return top(size);
+  }
+
+  private static final Comparator<Entry> largestFirst = new Comparator<Entry>() {
+    public int compare(Entry a, Entry b) {
+      if (a.bytes != b.bytes) return a.bytes > b.bytes ? -1 : 1;
+      if (a.count != b.count) return a.count > b.count ? -1 : 1;
+      return a.type.getName().compareTo(b.type.getName());
+    }
+  };
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+    .add("TotalCount", totalCount)
+    .add("TotalBytes", totalBytes)
+    .add("Top", top(10))
+    .toString();
+  }
+
+  /**
+   * The number of instances and the size of the instances of a class.
+   */
+  public static final class Entry {
+    private final Class<?> type;
+    private final long count;
+    private final long bytes;
+
+    Entry(Class<?> type, long count, long bytes) {
+      this.type = type;
+      this.count = count;
+      this.bytes = bytes;
+    }
+
+    /**
+     * Returns the class of the instances.
+     */
+    public Class<?> getType() {
+      return type;
+    }
+
+    /**
+     * Returns the number of instances.
+     */
+    public long getCount() {
+      return count;
+    }
+
+    /**
+     * Returns the size of the instances, in bytes.
+     */
+    public long getBytes() {
+      return bytes;
+    }
+
+    @Override
+    public String toString() {
+      return Objects.toStringHelper(this)
+      .add("Type", type.getName())
+      .add("Count", count)
+      .add("Bytes", bytes)
+      .toString();
+    }
+  }
+}
@@ -0,0 +1,249 @@
+/*******************************************************************************
+ * BEGIN COPYRIGHT NOTICE
+ * 
+ * Copyright [2011] [Rodrigo Lemos]
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * END COPYRIGHT NOTICE
+ ******************************************************************************/
+package objectexplorer;
+
+import java.lang.ref.Reference;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.List;
+
+import objectexplorer.Edge.Reachability;
+
+import sun.misc.Unsafe;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+
+/**
+ * The instance fields of a class (including inherited ones), as needed by
+ * the object traversal. Layouts are computed once per class and cached in
+ * the class itself (through a {@link ClassValue}), so they are safe to share
+ * among threads and do not keep class loaders from being collected.
+ *
+ * <p>Fields are listed from the most specific class up to {@code Object}, in
+ * declaration order within each class, each one along with the
+ * {@link FieldAccessor} that reads it.
+ */
+final class ClassLayout {
+  private static final ClassValue<ClassLayout> layouts = new ClassValue<ClassLayout>() {
+    @Override
+    protected ClassLayout computeValue(Class<?> type) {
+      return new ClassLayout(type);
+    }
+  };
+
+  private static final Field[] NO_FIELDS = new Field[0];
+
+  private static final long UNKNOWN_SIZE = -2;
+
+  private final Field[] referenceFields;
+  private final Field[] primitiveFields;
+  private final FieldAccessor[] referenceAccessors;
+  private final FieldAccessor[] primitiveAccessors;
+  private final boolean[] primitiveOrder;
+  private final int referentIndex;
+  private final Reachability referentReachability;
+  private final int arrayBaseOffset;
+  private final int arrayIndexScale;
+  // computed on first use, as the memory model may not be needed at all
+  private volatile long instanceSize = UNKNOWN_SIZE;
+
+  private ClassLayout(Class<?> type) {
+    List<Field> fields = Lists.newArrayListWithCapacity(8);
+    for (Class<?> clazz = type; clazz != null; clazz = clazz.getSuperclass()) {
+      for (Field field : clazz.getDeclaredFields()) {
+        if (!Modifier.isStatic(field.getModifiers())) fields.add(field);
+      }
+    }
+
+    boolean accessible = true;
+    try {
+      //all together so there is only one security check
+      AccessibleObject.setAccessible(fields.toArray(new AccessibleObject[fields.size()]), true);
+    } catch (RuntimeException e) {
+      // fields that cannot be made accessible can still be read at their offsets
+      if (!FieldAccessor.readsInaccessibleFields()) throw e;
+      accessible = false;
+    }
+
+    List<Field> references = Lists.newArrayList();
+    List<Field> primitives = Lists.newArrayList();
+    this.primitiveOrder = new boolean[fields.size()];
+    for (int i = 0; i < primitiveOrder.length; i++) {
+      Field field = fields.get(i);
+      if (field.getType().isPrimitive()) {
+        primitives.add(field);
+        primitiveOrder[i] = true;
+      } else {
+        references.add(field);
+      }
+    }
+    this.referenceFields = references.toArray(NO_FIELDS);
+    this.primitiveFields = primitives.toArray(NO_FIELDS);
+    this.referenceAccessors = accessorsOf(referenceFields, accessible);
+    this.primitiveAccessors = accessorsOf(primitiveFields, accessible);
+
+    Unsafe unsafe = FieldAccessor.unsafe();
+    if (type.isArray() && unsafe != null) {
+      this.arrayBaseOffset = unsafe.arrayBaseOffset(type);
+      this.arrayIndexScale = unsafe.arrayIndexScale(type);
+    } else {
+      this.arrayBaseOffset = -1;
+      this.arrayIndexScale = -1;
+    }
+
+    if (Reference.class.isAssignableFrom(type)) {
+      this.referentIndex = indexOfReferent(referenceFields);
+      this.referentReachability = Reachability.ofReferent(type);
+    } else {
+      this.referentIndex = -1;
+      this.referentReachability = Reachability.STRONG;
+    }
+  }
+
+  private static int indexOfReferent(Field[] fields) {
+    for (int i = 0; i < fields.length; i++) {
+      if (fields[i].getDeclaringClass() == Reference.class
+          && fields[i].getName().equals("referent")) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  // unless all fields were made accessible at once, each one is tried on its own
+  private static FieldAccessor[] accessorsOf(Field[] fields, boolean accessible) {
+    FieldAccessor[] accessors = new FieldAccessor[fields.length];
+    for (int i = 0; i < fields.length; i++) {
+      accessors[i] = FieldAccessor.of(fields[i], accessible || trySetAccessible(fields[i]));
+    }
+    return accessors;
+  }
+
+  private static boolean trySetAccessible(Field field) {
+    try {
+      field.setAccessible(true);
+      return true;
+    } catch (RuntimeException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Returns the layout of the given class.
+   */
+  static ClassLayout of(Class<?> type) {
+    return layouts.get(type);
+  }
+
+  /**
+   * Returns the non-static fields of reference (non-primitive) type.
+   * The returned array must not be modified.
+   */
+  Field[] referenceFields() {
+    return referenceFields;
+  }
+
+  /**
+   * Returns the non-static fields of primitive type.
+   * The returned array must not be modified.
+   */
+  Field[] primitiveFields() {
+    return primitiveFields;
+  }
+
+  /**
+   * Returns the accessors of {@link #referenceFields()}, in the same order.
+   * The returned array must not be modified.
+   */
+  FieldAccessor[] referenceAccessors() {
+    return referenceAccessors;
+  }
+
+  /**
+   * Returns the accessors of {@link #primitiveFields()}, in the same order.
+   * The returned array must not be modified.
+   */
+  FieldAccessor[] primitiveAccessors() {
+    return primitiveAccessors;
+  }
+
+  /**
+   * Returns, for each field in declaration order, whether it is the next one
+   * of {@link #primitiveFields()} (rather than of {@link #referenceFields()}).
+   * The returned array must not be modified.
+   */
+  boolean[] primitiveOrder() {
+    return primitiveOrder;
+  }
+
+  /**
+   * Returns the index, in {@link #referenceFields()}, of the field that holds
+   * the referent of a {@link Reference}, or {@code -1} if this is not the
+   * layout of a reference (or its referent field could not be found).
+   */
+  int referentIndex() {
+    return referentIndex;
+  }
+
+  /**
+   * Returns how strongly the referent of a {@link Reference} of this class is
+   * reachable from the reference itself ({@link Reachability#STRONG} if this
+   * is not the layout of a reference).
+   */
+  Reachability referentReachability() {
+    return referentReachability;
+  }
+
+  /**
+   * Returns the offset of the first element of an array of this class, or
+   * {@code -1} if it is unknown (or this is not the layout of an array).
+   */
+  int arrayBaseOffset() {
+    return arrayBaseOffset;
+  }
+
+  /**
+   * Returns the distance between consecutive elements of an array of this
+   * class, or {@code -1} if it is unknown (or this is not the layout of an
+   * array).
+   */
+  int arrayIndexScale() {
+    return arrayIndexScale;
+  }
+
+  /**
+   * Returns the size of an instance of this class in the running VM, or
+   * {@code -1} if it cannot be told from the offsets of its fields.
+   *
+   * @see MemoryModel#current()
+   */
+  long instanceSize() {
+    long size = instanceSize;
+    if (size == UNKNOWN_SIZE) {
+      size = MemoryModel.instanceSizeOf(Iterables.concat(
+          Arrays.asList(referenceFields), Arrays.asList(primitiveFields)));
+      instanceSize = size;
+    }
+    return size;
+  }
+}
@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * BEGIN COPYRIGHT NOTICE
+ * 
+ * Copyright [2011] [Rodrigo Lemos]
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * END COPYRIGHT NOTICE
+ ******************************************************************************/
+package objectexplorer;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import objectexplorer.ObjectVisitor.Traversal;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * A visitor that runs several visitors in a single exploration, so that an
+ * object graph is only explored (and its objects only remembered) once,
+ * however many things are measured about it.
+ *
+ * <p>Every edge is visited by each visitor that explores the object it comes
+ * from, and an object is explored if any visitor decides so. Visitors that
+ * are only to explore each object once should do so through the
+ * {@link #atMostOnce()} predicate of the composite, which remembers the
+ * visited objects for all of them, instead of a predicate of their own. An
+ * object first reached through an object that only some of them explore is
+ * then seen by those only, so visitors that share the predicate should
+ * explore the same objects, or differ on objects that reference nothing
+ * (such as primitive arrays). For example:
+ *
+ * <pre>   {@code
+ *   CompositeVisitor composite = new CompositeVisitor();
+ *   EdgeVisitor<Long> bytes = composite.add(
+ *       MemoryMeasurer.newBytesVisitor(acceptor, composite.atMostOnce()));
+ *   EdgeVisitor<Footprint> footprint = composite.add(
+ *       ObjectGraphMeasurer.newFootprintVisitor(acceptor, composite.atMostOnce()));
+ *   CompositeVisitor.Results results = ObjectExplorer.exploreObject(
+ *       rootObject, composite, EnumSet.of(Feature.VISIT_NULL));
+ *   long measuredBytes = results.get(bytes);}</pre>
+ *
+ * The exploration is given the union of the features that the visitors
+ * need.
+ */
+public final class CompositeVisitor implements EdgeVisitor<CompositeVisitor.Results> {
+  private static final int MAX_VISITORS = Long.SIZE;
+
+  private final List<EdgeVisitor<?>> visitors = Lists.newArrayList();
+  private final SharedAtMostOncePredicate atMostOnce = new SharedAtMostOncePredicate();
+  // the objects that only some visitors explore, and which ones (as bits)
+  private final Map<Object, Long> partlyExplored = new IdentityHashMap<Object, Long>();
+  // the number of the edge being visited
+  private long edge;
+
+  /**
+   * Adds a visitor to be run by this composite, and returns it (which is
+   * then the key of its result).
+   *
+   * @throws IllegalStateException if there are already 64 visitors
+   */
+  public <T> EdgeVisitor<T> add(EdgeVisitor<T> visitor) {
+    Preconditions.checkNotNull(visitor, "visitor");
+    Preconditions.checkState(visitors.size() < MAX_VISITORS, "Too many visitors");
+    visitors.add(visitor);
+    return visitor;
+  }
+
+  /**
+   * Returns a predicate that accepts each value only the first time it is
+   * seen, which all visitors of this composite may ask about the same edge:
+   * they all get the same answer.
+   */
+  public Predicate<Edge> atMostOnce() {
+    return atMostOnce;
+  }
+
+  public Traversal visit(Edge edge) {
+    this.edge++;
+    long visiting = -1L;
+    if (!edge.isRoot() && !partlyExplored.isEmpty()) {
+      Long explorers = partlyExplored.get(edge.getParent());
+      if (explorers != null) visiting = explorers;
+    }
+
+    long exploring = 0;
+    for (int i = 0; i < visitors.size(); i++) {
+      if ((visiting & (1L << i)) != 0 && visitors.get(i).visit(edge) == Traversal.EXPLORE) {
+        exploring |= 1L << i;
+      }
+    }
+    if (exploring == 0) return Traversal.SKIP;
+    if (exploring != allVisitors() && !edge.isPrimitive() && edge.getValue() != null) {
+      partlyExplored.put(edge.getValue(), exploring);
+    }
+    return Traversal.EXPLORE;
+  }
+
+  private long allVisitors() {
+    return visitors.size() == MAX_VISITORS ? -1L : (1L << visitors.size()) - 1;
+  }
+
+  public Results result() {
+    Object[] results = new Object[visitors.size()];
+    for (int i = 0; i < results.length; i++) {
+      results[i] = visitors.get(i).result();
+    }
+    return new Results(ImmutableList.copyOf(visitors), results);
+  }
+
+  /**
+   * The results of the visitors of a composite.
+   */
+  public static final class Results {
+    private final ImmutableList<EdgeVisitor<?>> visitors;
+    // in the order of the visitors; may hold nulls
+    private final Object[] results;
+
+    private Results(ImmutableList<EdgeVisitor<?>> visitors, Object[] results) {
+      this.visitors = visitors;
+      this.results = results;
+    }
+
+    /**
+     * Returns the result of the given visitor.
+     *
+     * @throws IllegalArgumentException if the visitor was not added to the
+     * composite
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(EdgeVisitor<T> visitor) {
+      for (int i = 0; i < results.length; i++) {
+        if (visitors.get(i) == visitor) {
+          return (T) results[i];
+        }
+      }
+      throw new IllegalArgumentException("Unknown visitor: " + visitor);
+    }
+  }
+
+  private final class SharedAtMostOncePredicate implements Predicate<Edge> {
+    private final ObjectExplorer.AtMostOnceEdgePredicate seen =
+        new ObjectExplorer.AtMostOnceEdgePredicate();
+    private long answeredEdge = -1;
+    private boolean answer;
+
+    public boolean apply(Edge edge) {
+      if (answeredEdge != CompositeVisitor.this.edge) {
+        answer = seen.apply(edge);
+        answeredEdge = CompositeVisitor.this.edge;
+      }
+      return answer;
+    }
+  }
+}
@@ -0,0 +1,485 @@
+/*******************************************************************************
+ * BEGIN COPYRIGHT NOTICE
+ * 
+ * Copyright [2011] [Rodrigo Lemos]
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * END COPYRIGHT NOTICE
+ ******************************************************************************/
+package objectexplorer;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * The dominator tree of an explored object graph, along with the retained
+ * size of each object: the memory that would be freed if the object became
+ * unreachable, which is its own size plus the sizes of all the objects that
+ * are only reachable through it (the objects it dominates).
+ *
+ * <p>The graph is recorded as numbered objects and arrays of numbers
+ * (compressed adjacency lists), and the tree is computed with the
+ * Lengauer-Tarjan algorithm, all on primitive arrays, so that graphs of tens
+ * of millions of objects need no object per node or per reference.
+ *
+ * @see MemoryMeasurer#measureRetainedSizes(Object)
+ */
+public final class DominatorTree {
+  private static final int NONE = -1;
+
+  private final IdentityIndex index;
+  private final long[] shallowBytes;
+  private final long[] retainedBytes;
+  // by object number; NONE for the root object
+  private final int[] dominators;
+
+  private DominatorTree(IdentityIndex index, long[] shallowBytes, long[] retainedBytes,
+      int[] dominators) {
+    this.index = index;
+    this.shallowBytes = shallowBytes;
+    this.retainedBytes = retainedBytes;
+    this.dominators = dominators;
+  }
+
+  /**
+   * Returns the number of objects of the graph.
+   */
+  public int size() {
+    return index.size();
+  }
+
+  /**
+   * Returns the root object of the graph, or {@code null} if the graph is
+   * empty.
+   */
+  @Nullable
+  public Object getRoot() {
+    return size() == 0 ? null : index.get(0);
+  }
+
+  /**
+   * Returns the size of the whole graph, in bytes, which is the retained size
+   * of the root object.
+   */
+  public long getTotalBytes() {
+    return size() == 0 ? 0 : retainedBytes[0];
+  }
+
+  /**
+   * Returns the retained size of the given object, in bytes.
+   *
+   * @throws IllegalArgumentException if the object is not part of the graph
+   */
+  public long getRetainedBytes(Object object) {
+    return retainedBytes[numberOf(object)];
+  }
+
+  /**
+   * Returns the size of the given object itself, in bytes.
+   *
+   * @throws IllegalArgumentException if the object is not part of the graph
+   */
+  public long getShallowBytes(Object object) {
+    return shallowBytes[numberOf(object)];
+  }
+
+  /**
+   * Returns the immediate dominator of the given object: the closest object
+   * that every path from the root object to the given one goes through, or
+   * {@code null} for the root object.
+   *
+   * @throws IllegalArgumentException if the object is not part of the graph
+   */
+  @Nullable
+  public Object getDominator(Object object) {
+    int dominator = dominators[numberOf(object)];
+    return dominator == NONE ? null : index.get(dominator);
+  }
+
+  long retainedBytes(int number) {
+    return retainedBytes[number];
+  }
+
+  long shallowBytes(int number) {
+    return shallowBytes[number];
+  }
+
+  /**
+   * Returns the number of the immediate dominator of the object of the given
+   * number, or {@code -1} for the root object (or unreachable ones).
+   */
+  int dominator(int number) {
+    return dominators[number];
+  }
+
+  /**
+   * Returns the numbers of the objects, ordered so that each one comes after
+   * its dominator.
+   */
+  int[] topDownOrder() {
+    return Builder.topDown(size(), dominators);
+  }
+
+  private int numberOf(Object object) {
+    int number = object == null ? NONE : index.numberOf(object);
+    Preconditions.checkArgument(number != NONE, "Not part of the graph: %s", object);
+    return number;
+  }
+
+  /**
+   * Returns the {@code n} objects (other than the root object) with the
+   * largest retained sizes, from the largest down.
+   */
+  public List<Retainer> top(int n) {
+    Preconditions.checkArgument(n >= 0, "Negative number of retainers");
+    int count = Math.min(n, Math.max(size() - 1, 0));
+    // a min-heap of the largest ones seen so far, by object number
+    int[] heap = new int[count];
+    int heapSize = 0;
+    for (int object = 1; object < size() && count > 0; object++) {
+      if (heapSize < count) {
+        heap[heapSize] = object;
+        siftUp(heap, heapSize++);
+      } else if (retainedBytes[object] > retainedBytes[heap[0]]) {
+        heap[0] = object;
+        siftDown(heap, heapSize);
+      }
+    }
+    Retainer[] retainers = new Retainer[heapSize];
+    while (heapSize > 0) {
+      int object = heap[0];
+      heap[0] = heap[--heapSize];
+      siftDown(heap, heapSize);
+      retainers[heapSize] = new Retainer(index.get(object), shallowBytes[object],
+          retainedBytes[object]);
+    }
+    return ImmutableList.copyOf(retainers);
+  }
+
+  private void siftUp(int[] heap, int i) {
+    int object = heap[i];
+    while (i > 0) {
+      int parent = (i - 1) >>> 1;
+      if (retainedBytes[heap[parent]] <= retainedBytes[object]) break;
+      heap[i] = heap[parent];
+      i = parent;
+    }
+    heap[i] = object;
+  }
+
+  private void siftDown(int[] heap, int size) {
+    if (size == 0) return;
+    int object = heap[0];
+    int i = 0;
+    for (int child = 1; child < size; child = 2 * i + 1) {
+      if (child + 1 < size && retainedBytes[heap[child + 1]] < retainedBytes[heap[child]]) {
+        child++;
+      }
+      if (retainedBytes[object] <= retainedBytes[heap[child]]) break;
+      heap[i] = heap[child];
+      i = child;
+    }
+    heap[i] = object;
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+    .add("Objects", size())
+    .add("TotalBytes", getTotalBytes())
+    .add("Top", top(10))
+    .toString();
+  }
+
+  /**
+   * An object along with its own size and its retained size.
+   */
+  public static final class Retainer {
+    private final Object object;
+    private final long shallowBytes;
+    private final long retainedBytes;
+
+    Retainer(Object object, long shallowBytes, long retainedBytes) {
+      this.object = object;
+      this.shallowBytes = shallowBytes;
+      this.retainedBytes = retainedBytes;
+    }
+
+    /**
+     * Returns the object.
+     */
+    public Object getObject() {
+      return object;
+    }
+
+    /**
+     * Returns the size of the object itself, in bytes.
+     */
+    public long getShallowBytes() {
+      return shallowBytes;
+    }
+
+    /**
+     * Returns the size of the object and of all the objects it dominates, in
+     * bytes.
+     */
+    public long getRetainedBytes() {
+      return retainedBytes;
+    }
+
+    @Override
+    public String toString() {
+      return Objects.toStringHelper(this)
+      .add("Type", object.getClass().getName())
+      .add("ShallowBytes", shallowBytes)
+      .add("RetainedBytes", retainedBytes)
+      .toString();
+    }
+  }
+
+  /**
+   * Records an object graph as it is explored, and then computes its
+   * dominator tree. The first object added is the root object.
+   */
+  static final class Builder {
+    private final IdentityIndex index = new IdentityIndex();
+    private long[] shallowBytes = new long[16];
+    // the references, as pairs of object numbers
+    private int[] sources = new int[16];
+    private int[] targets = new int[16];
+    private int references;
+
+    /**
+     * Returns the number of the given object, or {@code -1} if it has not
+     * been added.
+     */
+    int numberOf(Object object) {
+      return index.numberOf(object);
+    }
+
+    /**
+     * Adds an object of the given size, and returns its number.
+     */
+    int addObject(Object object, long bytes) {
+      int number = index.add(object);
+      if (number == shallowBytes.length) {
+        shallowBytes = Arrays.copyOf(shallowBytes, number * 2);
+      }
+      shallowBytes[number] = bytes;
+      return number;
+    }
+
+    /**
+     * Adds a node of the given size that stands for no object, and returns
+     * its number. Anonymous nodes are there to group other objects, and are
+     * reported as {@code null}.
+     */
+    int addAnonymous(long bytes) {
+      int number = index.addAnonymous();
+      if (number == shallowBytes.length) {
+        shallowBytes = Arrays.copyOf(shallowBytes, number * 2);
+      }
+      shallowBytes[number] = bytes;
+      return number;
+    }
+
+    /**
+     * Adds a reference between two added objects.
+     */
+    void addReference(int source, int target) {
+      if (references == sources.length) {
+        sources = Arrays.copyOf(sources, references * 2);
+        targets = Arrays.copyOf(targets, references * 2);
+      }
+      sources[references] = source;
+      targets[references] = target;
+      references++;
+    }
+
+    DominatorTree build() {
+      int n = index.size();
+      long[] shallowBytes = Arrays.copyOf(this.shallowBytes, n);
+      if (n == 0) {
+        return new DominatorTree(index, shallowBytes, shallowBytes, new int[0]);
+      }
+
+      int[] successorStarts = new int[n + 1];
+      int[] successors = adjacency(sources, targets, n, successorStarts);
+      int[] predecessorStarts = new int[n + 1];
+      int[] predecessors = adjacency(targets, sources, n, predecessorStarts);
+      sources = targets = null;
+
+      int[] dominators = dominators(n, successorStarts, successors,
+          predecessorStarts, predecessors);
+
+      long[] retainedBytes = shallowBytes.clone();
+      // from the leaves of the dominator tree up
+      int[] order = topDown(n, dominators);
+      for (int i = order.length - 1; i > 0; i--) {
+        int object = order[i];
+        retainedBytes[dominators[object]] += retainedBytes[object];
+      }
+      return new DominatorTree(index, shallowBytes, retainedBytes, dominators);
+    }
+
+    /**
+     * Groups the targets of the references by source, in compressed form:
+     * the targets of object {@code i} are at {@code [starts[i], starts[i + 1])}.
+     */
+    private int[] adjacency(int[] from, int[] to, int n, int[] starts) {
+      for (int i = 0; i < references; i++) {
+        starts[from[i] + 1]++;
+      }
+      for (int i = 0; i < n; i++) {
+        starts[i + 1] += starts[i];
+      }
+      int[] next = Arrays.copyOf(starts, n);
+      int[] adjacent = new int[references];
+      for (int i = 0; i < references; i++) {
+        adjacent[next[from[i]]++] = to[i];
+      }
+      return adjacent;
+    }
+
+    /**
+     * Computes the immediate dominator of each object (reachable from object
+     * {@code 0}), with the Lengauer-Tarjan algorithm (simple version, with
+     * path compression), without recursion.
+     */
+    private static int[] dominators(int n, int[] successorStarts, int[] successors,
+        int[] predecessorStarts, int[] predecessors) {
+      // depth-first numbering: vertices[i] is the object numbered i, and
+      // numbers[object] its number
+      int[] vertices = new int[n];
+      int[] numbers = new int[n];
+      int[] parents = new int[n];
+      Arrays.fill(numbers, NONE);
+      int[] stack = new int[n];
+      int[] cursors = new int[n];
+      int count = 0;
+      int depth = 0;
+      stack[depth++] = 0;
+      numbers[0] = count;
+      vertices[count++] = 0;
+      parents[0] = NONE;
+      cursors[0] = successorStarts[0];
+      while (depth > 0) {
+        int v = stack[depth - 1];
+        if (cursors[v] == successorStarts[v + 1]) {
+          depth--;
+          continue;
+        }
+        int w = successors[cursors[v]++];
+        if (numbers[w] != NONE) continue;
+        numbers[w] = count;
+        vertices[count++] = w;
+        parents[numbers[w]] = numbers[v];
+        cursors[w] = successorStarts[w];
+        stack[depth++] = w;
+      }
+
+      // from here on, everything is by depth-first number
+      int[] semi = new int[count];
+      int[] ancestors = new int[count];
+      int[] labels = new int[count];
+      int[] idoms = new int[count];
+      int[] bucketHeads = new int[count];
+      int[] bucketNexts = new int[count];
+      for (int i = 0; i < count; i++) {
+        semi[i] = labels[i] = i;
+      }
+      Arrays.fill(ancestors, NONE);
+      Arrays.fill(bucketHeads, NONE);
+
+      for (int w = count - 1; w > 0; w--) {
+        int object = vertices[w];
+        for (int p = predecessorStarts[object]; p < predecessorStarts[object + 1]; p++) {
+          int v = numbers[predecessors[p]];
+          if (v == NONE) continue;
+          int u = eval(v, ancestors, labels, semi, stack);
+          if (semi[u] < semi[w]) semi[w] = semi[u];
+        }
+        bucketNexts[w] = bucketHeads[semi[w]];
+        bucketHeads[semi[w]] = w;
+        int parent = parents[w];
+        ancestors[w] = parent;
+        for (int v = bucketHeads[parent]; v != NONE; v = bucketNexts[v]) {
+          int u = eval(v, ancestors, labels, semi, stack);
+          idoms[v] = semi[u] < semi[v] ? u : parent;
+        }
+        bucketHeads[parent] = NONE;
+      }
+      for (int w = 1; w < count; w++) {
+        if (idoms[w] != semi[w]) idoms[w] = idoms[idoms[w]];
+      }
+
+      int[] dominators = new int[n];
+      Arrays.fill(dominators, NONE);
+      for (int w = 1; w < count; w++) {
+        dominators[vertices[w]] = vertices[idoms[w]];
+      }
+      return dominators;
+    }
+
+    private static int eval(int v, int[] ancestors, int[] labels, int[] semi, int[] stack) {
+      if (ancestors[v] == NONE) return v;
+      // compress the path up to the root of the forest, from the top down
+      int depth = 0;
+      for (int x = v; ancestors[ancestors[x]] != NONE; x = ancestors[x]) {
+        stack[depth++] = x;
+      }
+      while (depth > 0) {
+        int x = stack[--depth];
+        int a = ancestors[x];
+        if (semi[labels[a]] < semi[labels[x]]) labels[x] = labels[a];
+        ancestors[x] = ancestors[a];
+      }
+      return labels[v];
+    }
+
+    /**
+     * Returns the objects reachable from object {@code 0}, ordered so that
+     * each one comes after its dominator.
+     */
+    static int[] topDown(int n, int[] dominators) {
+      int[] childStarts = new int[n + 1];
+      for (int object = 1; object < n; object++) {
+        if (dominators[object] != NONE) childStarts[dominators[object] + 1]++;
+      }
+      for (int i = 0; i < n; i++) {
+        childStarts[i + 1] += childStarts[i];
+      }
+      int[] next = Arrays.copyOf(childStarts, n);
+      int[] children = new int[childStarts[n]];
+      for (int object = 1; object < n; object++) {
+        if (dominators[object] != NONE) children[next[dominators[object]]++] = object;
+      }
+      int[] order = new int[n];
+      int size = 1;
+      for (int i = 0; i < size; i++) {
+        int object = order[i];
+        for (int c = childStarts[object]; c < childStarts[object + 1]; c++) {
+          order[size++] = children[c];
+        }
+      }
+      return Arrays.copyOf(order, size);
+    }
+  }
+}
@@ -0,0 +1,275 @@
+/*******************************************************************************
+ * BEGIN COPYRIGHT NOTICE
+ * 
+ * Copyright [2011] [Rodrigo Lemos]
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * END COPYRIGHT NOTICE
+ ******************************************************************************/
+package objectexplorer;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A single step of an object traversal: the value being visited, together
+ * with the object and the field or array index it was reached through.
+ *
+ * <p>Unlike a {@link Chain}, an edge does not remember the whole path from
+ * the root object. The explorer reuses a single instance for the whole
+ * traversal, so an edge is only meaningful during the
+ * {@link EdgeVisitor#visit(Edge)} call it is passed to, and must not be kept
+ * afterwards.
+ *
+ * @see EdgeVisitor
+ */
+public final class Edge {
+  static final int NO_INDEX = -1;
+
+  private Object parent;
+  private Field field;
+  private int arrayIndex = NO_INDEX;
+  private Object value;
+  private int depth;
+  // whether value is a primitive that has not been read yet
+  private boolean unread;
+  private FieldAccessor accessor;
+
+  // only changed by explorations that track reachability
+  Reachability reachability = Reachability.STRONG;
+
+  // only maintained when the explorer tracks chains on behalf of an ObjectVisitor
+  Chain parentChain;
+  Chain chain;
+
+  Edge() { }
+
+  void set(Object parent, Chain parentChain, Field field, int arrayIndex, Object value,
+      int depth) {
+    this.parent = parent;
+    this.parentChain = parentChain;
+    this.field = field;
+    this.arrayIndex = arrayIndex;
+    this.value = value;
+    this.depth = depth;
+    this.unread = false;
+    this.accessor = null;
+    this.chain = null;
+  }
+
+  /**
+   * Sets this edge to lead to an element of a primitive array. The element
+   * itself is only read (and boxed) if {@link #getValue()} is called.
+   */
+  void setPrimitiveElement(Object array, Chain parentChain, int arrayIndex, int depth) {
+    set(array, parentChain, null, arrayIndex, null, depth);
+    this.unread = true;
+  }
+
+  /**
+   * Sets this edge to lead to the value of a primitive field. The value is
+   * only read (and boxed) if {@link #getValue()} is called.
+   */
+  void setPrimitiveField(Object parent, Chain parentChain, FieldAccessor accessor, int depth) {
+    set(parent, parentChain, accessor.field, NO_INDEX, null, depth);
+    this.unread = true;
+    this.accessor = accessor;
+  }
+
+  /**
+   * Returns whether this edge leads to the root object itself, in which case
+   * there is neither a parent, a field or an array index.
+   */
+  public boolean isRoot() {
+    return parent == null;
+  }
+
+  /**
+   * Returns the object holding the reference (or primitive value) this edge
+   * leads to, or {@code null} if this edge leads to the root object.
+   */
+  public @Nullable Object getParent() {
+    return parent;
+  }
+
+  /**
+   * Returns whether this edge goes through a field of the parent object.
+   */
+  public boolean isThroughField() {
+    return field != null;
+  }
+
+  /**
+   * Returns whether this edge goes through an array index, i.e. the parent
+   * is an array and the value is one of its elements.
+   */
+  public boolean isThroughArrayIndex() {
+    return arrayIndex != NO_INDEX;
+  }
+
+  /**
+   * Returns the field this edge goes through, or {@code null} if it does not
+   * go through a field.
+   */
+  public @Nullable Field getField() {
+    return field;
+  }
+
+  /**
+   * Returns the array index this edge goes through, or {@code -1} if it does
+   * not go through an array index.
+   */
+  public int getArrayIndex() {
+    return arrayIndex;
+  }
+
+  /**
+   * Returns the value that this edge leads to. If the value is a primitive,
+   * a wrapper object is returned instead.
+   */
+  public @Nullable Object getValue() {
+    if (unread) {
+      value = accessor != null ? accessor.get(parent) : readElement(parent, arrayIndex);
+      unread = false;
+    }
+    return value;
+  }
+
+  /**
+   * Returns the declared type of the value: the type of the field, the
+   * component type of the array, or the class of the root object.
+   */
+  public @Nonnull Class<?> getValueType() {
+    if (field != null) {
+      return field.getType();
+    } else if (arrayIndex != NO_INDEX) {
+      return parent.getClass().getComponentType();
+    } else {
+      return value.getClass();
+    }
+  }
+
+  /**
+   * Returns the distance of the value from the root object, i.e. the number
+   * of references followed to reach it ({@code 0} for the root object).
+   */
+  public int getDepth() {
+    return depth;
+  }
+
+  /**
+   * Returns how strongly the value of this edge is reachable from the root
+   * object. Unless {@link ObjectExplorer.Feature#TRACK_REACHABILITY} is
+   * requested, every value is considered {@link Reachability#STRONG strongly}
+   * reachable.
+   */
+  public Reachability getReachability() {
+    return reachability;
+  }
+
+  /**
+   * Returns whether the value of this edge represents a primitive.
+   */
+  public boolean isPrimitive() {
+    return getValueType().isPrimitive();
+  }
+
+  private static Object readElement(Object array, int index) {
+    Class<?> type = array.getClass().getComponentType();
+    if (type == int.class) {
+      return ((int[]) array)[index];
+    } else if (type == long.class) {
+      return ((long[]) array)[index];
+    } else if (type == byte.class) {
+      return ((byte[]) array)[index];
+    } else if (type == char.class) {
+      return ((char[]) array)[index];
+    } else if (type == double.class) {
+      return ((double[]) array)[index];
+    } else if (type == float.class) {
+      return ((float[]) array)[index];
+    } else if (type == short.class) {
+      return ((short[]) array)[index];
+    } else {
+      return ((boolean[]) array)[index];
+    }
+  }
+
+  @Override public String toString() {
+    if (isThroughField()) {
+      return "->" + field.getName();
+    } else if (isThroughArrayIndex()) {
+      return "->[" + arrayIndex + "]";
+    } else {
+      return String.valueOf(value);
+    }
+  }
+
+  /**
+   * How strongly a value is reachable from the root object, from the
+   * strongest to the weakest, in the sense of {@link java.lang.ref}: a value
+   * is as strongly reachable as the strongest of its paths from the root
+   * object, and a path is as strong as the weakest {@link Reference} it goes
+   * through.
+   */
+  public enum Reachability {
+    /**
+     * Reachable without going through any {@code Reference}.
+     */
+    STRONG,
+
+    /**
+     * Reachable through {@link SoftReference}s.
+     */
+    SOFT,
+
+    /**
+     * Reachable through {@link WeakReference}s.
+     */
+    WEAK,
+
+    /**
+     * Reachable through {@link PhantomReference}s (or references of any
+     * other kind, such as the ones used for finalization).
+     */
+    PHANTOM;
+
+    /**
+     * Returns the reachability of the referents of the given kind of
+     * reference, taken on its own.
+     */
+    static Reachability ofReferent(Class<?> referenceClass) {
+      if (SoftReference.class.isAssignableFrom(referenceClass)) {
+        return SOFT;
+      } else if (WeakReference.class.isAssignableFrom(referenceClass)) {
+        return WEAK;
+      } else {
+        return PHANTOM;
+      }
+    }
+
+    /**
+     * Returns the weaker of this and the given reachability.
+     */
+    Reachability weakest(Reachability other) {
+      return compareTo(other) >= 0 ? this : other;
+    }
+  }
+}
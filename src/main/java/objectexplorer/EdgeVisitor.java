@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * BEGIN COPYRIGHT NOTICE
+ * 
+ * Copyright [2011] [Rodrigo Lemos]
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * END COPYRIGHT NOTICE
+ ******************************************************************************/
+package objectexplorer;
+
+import objectexplorer.ObjectVisitor.Traversal;
+
+/**
+ * A visitor that controls an object traversal without requiring the path
+ * from the root object. Implementations of this interface are passed to
+ * {@link ObjectExplorer} exploration methods.
+ *
+ * <p>Compared to {@link ObjectVisitor}, the explorer does not need to create
+ * a {@link Chain} for each explored value, which makes this the cheaper
+ * choice for visitors that only look at the visited values and their
+ * declared types.
+ *
+ * @param <T> the type of the result that this visitor returns
+ * (can be defined as {@code Void} to denote no result}.
+ * @see ObjectExplorer
+ */
+public interface EdgeVisitor<T> {
+  /**
+   * Visits an explored value (along with the object and field or array index
+   * it was reached through), and decides whether to continue the exploration
+   * of that value.
+   *
+   * <p>In case the explored value is either primitive or {@code null}
+   * (e.g., if {@code edge.isPrimitive() || edge.getValue() == null}),
+   * the return value is meaningless and is ignored.
+   *
+   * @param edge the edge that leads to the explored value; only valid
+   * during this call
+   * @return {@link Traversal#EXPLORE} to denote that the visited object
+   * should be further explored, or {@link Traversal#SKIP} to avoid
+   * exploring it.
+   */
+  Traversal visit(Edge edge);
+
+  /**
+   * Returns an arbitrary value (presumably constructed during the object
+   * graph traversal).
+   */
+  T result();
+}
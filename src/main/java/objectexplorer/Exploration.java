@@ -0,0 +1,488 @@
+/*******************************************************************************
+ * BEGIN COPYRIGHT NOTICE
+ * 
+ * Copyright [2011] [Rodrigo Lemos]
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * END COPYRIGHT NOTICE
+ ******************************************************************************/
+package objectexplorer;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import objectexplorer.Edge.Reachability;
+import objectexplorer.ObjectExplorer.Feature;
+import objectexplorer.ObjectVisitor.Traversal;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+
+/**
+ * An object graph exploration that can be run in slices, each one bounded
+ * by a number of objects and a time budget. Between slices, the visitor's
+ * (partial) result is available through {@link #result()}, and the next
+ * slice resumes exactly where the previous one stopped.
+ *
+ * <p>Explorations are obtained through
+ * {@link ObjectExplorer#newExploration(Object, EdgeVisitor, EnumSet)}, and
+ * are not thread-safe: a single thread at a time may run a slice.
+ *
+ * <p>This is also the traversal behind all of {@link ObjectExplorer}. Rather
+ * than pending edges, the exploration keeps a cursor frame for each open
+ * object (one that has been visited, but whose references have not all been
+ * explored yet), holding the object and the position of its next reference.
+ * References are only read when they are about to be explored, so the
+ * memory used by the exploration itself depends on the depth of the graph
+ * (or, breadth-first, on the number of open objects), not on the number of
+ * references of its objects: a huge array takes a single frame. Frames are
+ * kept in parallel arrays rather than as objects, so exploring an edge
+ * allocates nothing. A {@link Chain} is only created when the exploration is
+ * asked to track chains, which is how {@link ObjectVisitor}s are served.
+ *
+ * @param <T> the type of the value obtained by the visitor
+ */
+public final class Exploration<T> {
+  private static final int INITIAL_CAPACITY = 16;
+
+  /**
+   * The clock is only checked once every so many visited objects.
+   */
+  private static final int CLOCK_CHECK_INTERVAL = 256;
+
+  private final EdgeVisitor<T> visitor;
+  // the visitor, if it visits primitives in bulk
+  private final PrimitiveVisitor primitiveVisitor;
+  private final boolean visitNull;
+  private final boolean visitPrimitives;
+  private final boolean breadthFirst;
+  private final boolean trackReachability;
+  private final int maxDepth;
+  private final boolean trackChains;
+  private final Edge edge = new Edge();
+
+  // the root object, until it is visited
+  private Object root;
+
+  // the open frames, from head (inclusive) to size (exclusive); depth-first
+  // explorations work on the last one, breadth-first ones on the head. Each
+  // frame has the positions [next, end) of the references of an object (or
+  // an array) left to explore, and the depth of the referenced values;
+  // chains are only kept when tracking chains, and layouts only for objects
+  private Object[] objects = new Object[INITIAL_CAPACITY];
+  private Chain[] chains = new Chain[INITIAL_CAPACITY];
+  private ClassLayout[] layouts = new ClassLayout[INITIAL_CAPACITY];
+  private int[] nexts = new int[INITIAL_CAPACITY];
+  private int[] ends = new int[INITIAL_CAPACITY];
+  private int[] depths = new int[INITIAL_CAPACITY];
+  private int head;
+  private int size;
+
+  // the number of references left in the open frames
+  private long pending;
+
+  // referents that are only reachable through references weaker than the
+  // ones being explored, to be explored once nothing stronger is left
+  private ListMultimap<Reachability, DeferredReferent> deferred;
+
+  Exploration(EdgeVisitor<T> visitor, EnumSet<Feature> features, int maxDepth,
+      boolean trackChains) {
+    this(visitor, features.contains(Feature.VISIT_NULL),
+        features.contains(Feature.VISIT_PRIMITIVES),
+        features.contains(Feature.BREADTH_FIRST),
+        features.contains(Feature.TRACK_REACHABILITY), maxDepth, trackChains);
+  }
+
+  private Exploration(EdgeVisitor<T> visitor, boolean visitNull, boolean visitPrimitives,
+      boolean breadthFirst, boolean trackReachability, int maxDepth, boolean trackChains) {
+    Preconditions.checkArgument(maxDepth >= 0, "Negative maximum depth");
+    this.visitor = visitor;
+    this.primitiveVisitor = visitor instanceof PrimitiveVisitor
+        ? (PrimitiveVisitor) visitor : null;
+    this.visitNull = visitNull;
+    this.visitPrimitives = visitPrimitives;
+    this.breadthFirst = breadthFirst;
+    this.trackReachability = trackReachability;
+    this.maxDepth = maxDepth;
+    this.trackChains = trackChains;
+  }
+
+  /**
+   * Runs the exploration until it is over, and returns the visitor's result.
+   */
+  T complete() {
+    while (hasPending()) step();
+    return visitor.result();
+  }
+
+  void pushRoot(Object rootObject) {
+    root = rootObject;
+  }
+
+  /**
+   * Returns whether the exploration is over, i.e. there is nothing left to
+   * explore.
+   */
+  public boolean isDone() {
+    return root == null && head == size && (deferred == null || deferred.isEmpty());
+  }
+
+  /**
+   * Continues the exploration until it is over, or {@code maxObjects} more
+   * objects have been visited.
+   *
+   * @return whether the exploration is over
+   */
+  public boolean run(long maxObjects) {
+    return run(maxObjects, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Continues the exploration until it is over, {@code maxObjects} more
+   * objects have been visited, or (approximately) the given time has
+   * elapsed, whichever comes first. At least one object is visited, if any
+   * is left, so that every call makes progress.
+   *
+   * @return whether the exploration is over
+   */
+  public boolean run(long maxObjects, long timeout, TimeUnit unit) {
+    Preconditions.checkArgument(maxObjects > 0, "maxObjects must be positive");
+    long timeoutNanos = unit.toNanos(timeout);
+    long start = System.nanoTime();
+    for (long visited = 0; visited < maxObjects && hasPending(); visited++) {
+      if (visited > 0 && visited % CLOCK_CHECK_INTERVAL == 0
+          && System.nanoTime() - start >= timeoutNanos) {
+        break;
+      }
+      step();
+    }
+    return isDone();
+  }
+
+  /**
+   * Returns the number of references waiting to be explored (not counting
+   * deferred referents). Some of them may turn out to be {@code null}.
+   */
+  long pending() {
+    return root == null ? pending : pending + 1;
+  }
+
+  /**
+   * Visits the next pending non-null reference (if any is left), and opens
+   * a frame for its value if the visitor asks so (and the maximum depth
+   * allows). Must only be called if {@code pending() > 0}.
+   */
+  void step() {
+    if (root != null) {
+      Object rootObject = root;
+      root = null;
+      edge.set(null, null, null, Edge.NO_INDEX, rootObject, 0);
+      if (visitor.visit(edge) == Traversal.EXPLORE && maxDepth > 0) {
+        open(rootObject, edge.chain, 1);
+      }
+      return;
+    }
+    while (head < size && !pull()) { }
+  }
+
+  /**
+   * Explores the next reference of the current frame, and returns whether
+   * it was visited (i.e., whether it was not {@code null}).
+   */
+  private boolean pull() {
+    int frame = breadthFirst ? head : size - 1;
+    if (nexts[frame] == ends[frame]) {
+      // whatever was left in there was split off
+      drop(frame);
+      return false;
+    }
+    Object object = objects[frame];
+    Chain chain = chains[frame];
+    ClassLayout layout = layouts[frame];
+    int position = nexts[frame]++;
+    int depth = depths[frame];
+    if (nexts[frame] == ends[frame]) drop(frame);
+    pending--;
+
+    Field field;
+    int index;
+    Object value;
+    if (layout == null) {
+      field = null;
+      index = position;
+      value = ((Object[]) object)[position];
+    } else {
+      int i = fieldIndex(layout, position);
+      field = layout.referenceFields()[i];
+      index = Edge.NO_INDEX;
+      value = layout.referenceAccessors()[i].get(object);
+      if (value != null && trackReachability && i == layout.referentIndex()) {
+        Reachability reachability = edge.reachability.weakest(layout.referentReachability());
+        if (reachability != edge.reachability) {
+          defer(reachability, new DeferredReferent(object, chain, layout, position, depth));
+          return false;
+        }
+      }
+    }
+    // nulls, if they are to be visited, were when the frame was opened
+    if (value == null) return false;
+
+    edge.set(object, chain, field, index, value, depth);
+    //the only place where the return value of visit() is considered
+    if (visitor.visit(edge) == Traversal.EXPLORE && depth < maxDepth) {
+      open(value, edge.chain, depth + 1);
+    }
+    return true;
+  }
+
+  /*
+   * Depth-first, the references of an object are explored from its last
+   * field to its first one (so that, with an at-most-once visitor, fields
+   * declared first prevail); breadth-first, in declaration order. Array
+   * elements are explored in index order either way.
+   */
+  private int fieldIndex(ClassLayout layout, int position) {
+    return breadthFirst ? position : layout.referenceFields().length - 1 - position;
+  }
+
+  /**
+   * Returns the result of the visitor. Before the exploration is over, this
+   * is whatever the visitor makes of the part of the graph explored so far.
+   */
+  public T result() {
+    return visitor.result();
+  }
+
+  /**
+   * Moves half of the references left in the oldest open frame (the one
+   * closest to the root, and thus likely leading to the larger subgraphs) to
+   * a new exploration, which uses the given visitor and the same features as
+   * this one. Must only be called if {@code pending() > 0}.
+   */
+  Exploration<T> split(EdgeVisitor<T> visitor) {
+    Preconditions.checkState(!trackReachability, "Cannot split while tracking reachability");
+    Exploration<T> other = new Exploration<T>(visitor, visitNull, visitPrimitives,
+        breadthFirst, trackReachability, maxDepth, trackChains);
+    if (root != null) {
+      other.root = root;
+      root = null;
+      return other;
+    }
+    for (int frame = head; frame < size; frame++) {
+      int left = ends[frame] - nexts[frame];
+      if (left == 0) continue;
+      // a single reference left is moved as a whole, leaving an exhausted frame
+      int middle = nexts[frame] + left / 2;
+      other.push(objects[frame], chains[frame], layouts[frame], middle, ends[frame],
+          depths[frame]);
+      pending -= ends[frame] - middle;
+      ends[frame] = middle;
+      break;
+    }
+    return other;
+  }
+
+  /**
+   * Visits the primitive and {@code null} values referenced by the given
+   * (non-null) object, if they are to be visited, and opens a frame for the
+   * object if it has any reference to explore. The referenced values are at
+   * the given depth.
+   */
+  private void open(Object value, Chain chain, int depth) {
+    Class<?> valueClass = value.getClass();
+    if (valueClass.isArray()) {
+      Class<?> componentType = valueClass.getComponentType();
+      if (componentType.isPrimitive()) {
+        // nothing to explore in there, so there is no need to even look at
+        // the elements unless they are to be visited
+        if (!visitPrimitives) return;
+        if (primitiveVisitor != null) {
+          primitiveVisitor.visitPrimitiveArray(value, componentType, Array.getLength(value));
+          return;
+        }
+        for (int i = Array.getLength(value) - 1; i >= 0; i--) {
+          edge.setPrimitiveElement(value, chain, i, depth);
+          visitor.visit(edge);
+        }
+      } else {
+        Object[] array = (Object[]) value;
+        if (visitNull) {
+          if (breadthFirst) {
+            for (int i = 0; i < array.length; i++) {
+              if (array[i] == null) visitNull(value, chain, null, i, depth);
+            }
+          } else {
+            for (int i = array.length - 1; i >= 0; i--) {
+              if (array[i] == null) visitNull(value, chain, null, i, depth);
+            }
+          }
+        }
+        if (array.length > 0) push(value, chain, null, 0, array.length, depth);
+      }
+    } else {
+      ClassLayout layout = ClassLayout.of(valueClass);
+      Field[] referenceFields = layout.referenceFields();
+      if (visitNull || visitPrimitives) {
+        visitNullsAndPrimitives(value, chain, layout, depth);
+      }
+      if (referenceFields.length > 0) {
+        push(value, chain, layout, 0, referenceFields.length, depth);
+      }
+    }
+  }
+
+  /*
+   * In a single pass over the fields, so that null and primitive values are
+   * visited in declaration order.
+   */
+  private void visitNullsAndPrimitives(Object value, Chain chain, ClassLayout layout,
+      int depth) {
+    Field[] referenceFields = layout.referenceFields();
+    FieldAccessor[] referenceAccessors = layout.referenceAccessors();
+    Field[] primitiveFields = layout.primitiveFields();
+    FieldAccessor[] primitiveAccessors = layout.primitiveAccessors();
+    int reference = 0;
+    int primitive = 0;
+    for (boolean isPrimitive : layout.primitiveOrder()) {
+      if (!isPrimitive) {
+        int i = reference++;
+        if (visitNull && referenceAccessors[i].get(value) == null) {
+          visitNull(value, chain, referenceFields[i], Edge.NO_INDEX, depth);
+        }
+      } else if (visitPrimitives) {
+        int i = primitive++;
+        if (primitiveVisitor != null) {
+          Field field = primitiveFields[i];
+          primitiveVisitor.visitPrimitiveField(value, field, field.getType());
+        } else {
+          edge.setPrimitiveField(value, chain, primitiveAccessors[i], depth);
+          visitor.visit(edge);
+        }
+      }
+    }
+  }
+
+  private void visitNull(Object parent, Chain parentChain, Field field, int index, int depth) {
+    edge.set(parent, parentChain, field, index, null, depth);
+    visitor.visit(edge);
+  }
+
+  private void defer(Reachability reachability, DeferredReferent referent) {
+    if (deferred == null) deferred = ArrayListMultimap.create();
+    deferred.put(reachability, referent);
+  }
+
+  /**
+   * Returns whether there are pending references, after moving on to the
+   * strongest deferred referents if there are none left at the current
+   * reachability.
+   */
+  private boolean hasPending() {
+    if (root != null || head < size) return true;
+    if (deferred == null || deferred.isEmpty()) return false;
+    for (Reachability reachability : Reachability.values()) {
+      List<DeferredReferent> referents = deferred.removeAll(reachability);
+      if (referents.isEmpty()) continue;
+      edge.reachability = reachability;
+      // each referent is explored through a frame of its own
+      for (DeferredReferent referent : referents) {
+        push(referent.reference, referent.chain, referent.layout,
+            referent.position, referent.position + 1, referent.depth);
+      }
+      return true;
+    }
+    throw new AssertionError();
+  }
+
+  private void push(Object object, Chain chain, ClassLayout layout, int next, int end,
+      int depth) {
+    if (size == objects.length) {
+      if (head > 0) {
+        compact();
+      } else {
+        int capacity = size * 2;
+        objects = Arrays.copyOf(objects, capacity);
+        chains = Arrays.copyOf(chains, capacity);
+        layouts = Arrays.copyOf(layouts, capacity);
+        nexts = Arrays.copyOf(nexts, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+        depths = Arrays.copyOf(depths, capacity);
+      }
+    }
+    objects[size] = object;
+    chains[size] = chain;
+    layouts[size] = layout;
+    nexts[size] = next;
+    ends[size] = end;
+    depths[size] = depth;
+    size++;
+    pending += end - next;
+  }
+
+  /**
+   * Removes a frame whose references have all been explored, which is
+   * either the head or the last one.
+   */
+  private void drop(int frame) {
+    objects[frame] = null;
+    chains[frame] = null;
+    layouts[frame] = null;
+    if (frame == head && breadthFirst) {
+      head++;
+    } else {
+      size--;
+    }
+    if (head == size) head = size = 0;
+  }
+
+  /**
+   * Moves the open frames to the beginning of the arrays.
+   */
+  private void compact() {
+    int open = size - head;
+    System.arraycopy(objects, head, objects, 0, open);
+    System.arraycopy(chains, head, chains, 0, open);
+    System.arraycopy(layouts, head, layouts, 0, open);
+    System.arraycopy(nexts, head, nexts, 0, open);
+    System.arraycopy(ends, head, ends, 0, open);
+    System.arraycopy(depths, head, depths, 0, open);
+    Arrays.fill(objects, open, size, null);
+    Arrays.fill(chains, open, size, null);
+    Arrays.fill(layouts, open, size, null);
+    head = 0;
+    size = open;
+  }
+
+  private static final class DeferredReferent {
+    final Object reference;
+    final Chain chain;
+    final ClassLayout layout;
+    final int position;
+    final int depth;
+
+    DeferredReferent(Object reference, Chain chain, ClassLayout layout, int position,
+        int depth) {
+      this.reference = reference;
+      this.chain = chain;
+      this.layout = layout;
+      this.position = position;
+      this.depth = depth;
+    }
+  }
+}
@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * BEGIN COPYRIGHT NOTICE
+ * 
+ * Copyright [2011] [Rodrigo Lemos]
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * END COPYRIGHT NOTICE
+ ******************************************************************************/
+package objectexplorer;
+
+import java.lang.reflect.Field;
+
+import sun.misc.Unsafe;
+
+/**
+ * Reads the value of an instance field. Accessors are created once per field
+ * (see {@link ClassLayout}) and then used for every object of that class.
+ *
+ * <p>Whenever {@code sun.misc.Unsafe} is available, fields are read directly
+ * at their offset, without the access checks of {@link Field#get(Object)}.
+ * Otherwise, or for fields whose offset cannot be obtained, reading falls
+ * back to reflection (which requires the field to be accessible).
+ */
+abstract class FieldAccessor {
+  private static final Unsafe unsafe = findUnsafe();
+
+  final Field field;
+
+  FieldAccessor(Field field) {
+    this.field = field;
+  }
+
+  /**
+   * Returns an accessor for the given instance field.
+   *
+   * @param accessible whether the field was made accessible, so that it can
+   * be read through reflection
+   * @throws IllegalStateException if the field can be read neither at its
+   * offset nor through reflection
+   */
+  static FieldAccessor of(Field field, boolean accessible) {
+    if (unsafe != null) {
+      try {
+        return new UnsafeFieldAccessor(field, unsafe.objectFieldOffset(field));
+      } catch (RuntimeException e) {
+        // e.g. records and hidden classes, whose fields may still be accessible
+        if (!accessible) {
+          throw new IllegalStateException("Cannot read field " + field + ": its offset is "
+              + "unavailable, and it cannot be made accessible", e);
+        }
+      }
+    }
+    return new ReflectionFieldAccessor(field);
+  }
+
+  /**
+   * Returns whether fields can be read regardless of their accessibility.
+   */
+  static boolean readsInaccessibleFields() {
+    return unsafe != null;
+  }
+
+  static Unsafe unsafe() {
+    return unsafe;
+  }
+
+  /**
+   * Returns the value of the field in the given object. Values of primitive
+   * fields are returned boxed.
+   */
+  abstract Object get(Object target);
+
+  private static Unsafe findUnsafe() {
+    try {
+      Field theUnsafe = Unsafe.class.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      return (Unsafe) theUnsafe.get(null);
+    } catch (Throwable t) {
+      return null;
+    }
+  }
+
+  private static final class UnsafeFieldAccessor extends FieldAccessor {
+    private final long offset;
+    private final Class<?> type;
+
+    UnsafeFieldAccessor(Field field, long offset) {
+      super(field);
+      this.offset = offset;
+      this.type = field.getType();
+    }
+
+    @Override
+    Object get(Object target) {
+      if (!type.isPrimitive()) {
+        return unsafe.getObject(target, offset);
+      } else if (type == int.class) {
+        return unsafe.getInt(target, offset);
+      } else if (type == long.class) {
+        return unsafe.getLong(target, offset);
+      } else if (type == byte.class) {
+        return unsafe.getByte(target, offset);
+      } else if (type == char.class) {
+        return unsafe.getChar(target, offset);
+      } else if (type == double.class) {
+        return unsafe.getDouble(target, offset);
+      } else if (type == float.class) {
+        return unsafe.getFloat(target, offset);
+      } else if (type == short.class) {
+        return unsafe.getShort(target, offset);
+      } else {
+        return unsafe.getBoolean(target, offset);
+      }
+    }
+  }
+
+  private static final class ReflectionFieldAccessor extends FieldAccessor {
+    ReflectionFieldAccessor(Field field) {
+      super(field);
+    }
+
+    @Override
+    Object get(Object target) {
+      try {
+        return field.get(target);
+      } catch (Exception e) {
+        throw new AssertionError(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * BEGIN COPYRIGHT NOTICE
+ * 
+ * Copyright [2011] [Rodrigo Lemos]
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * END COPYRIGHT NOTICE
+ ******************************************************************************/
+package objectexplorer;
+
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Numbers objects, compared by identity, in the order they are added:
+ * {@code 0, 1, 2...} The numbers are kept in an open-addressed (linearly
+ * probed) table of references alongside a parallel array of numbers, and the
+ * objects themselves in an array indexed by number, so that no object is
+ * allocated per element. Not thread-safe.
+ *
+ * @see IdentitySet
+ */
+final class IdentityIndex {
+  private static final int MINIMUM_CAPACITY = 16;
+  private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+  private Object[] table;
+  private int[] numbers;
+  private int shift;
+  private Object[] objects = new Object[MINIMUM_CAPACITY];
+  private int size;
+  // the numbers that stand for objects
+  private int entries;
+
+  IdentityIndex() {
+    allocate(MINIMUM_CAPACITY);
+  }
+
+  private void allocate(int capacity) {
+    table = new Object[capacity];
+    numbers = new int[capacity];
+    shift = Integer.numberOfLeadingZeros(capacity) + 1;
+  }
+
+  private int indexOf(Object o) {
+    // fibonacci hashing, as identity hash codes are not well spread in their low bits
+    return (System.identityHashCode(o) * 0x9E3779B9) >>> shift;
+  }
+
+  /**
+   * Returns the number of the given (non-null) object, or {@code -1} if it
+   * has not been added.
+   */
+  int numberOf(Object o) {
+    Object[] table = this.table;
+    int mask = table.length - 1;
+    for (int i = indexOf(o); ; i = (i + 1) & mask) {
+      Object current = table[i];
+      if (current == null) {
+        return -1;
+      } else if (current == o) {
+        return numbers[i];
+      }
+    }
+  }
+
+  /**
+   * Adds the given (non-null) object, which must not have been added yet,
+   * and returns its number.
+   */
+  int add(Object o) {
+    Preconditions.checkNotNull(o);
+    if (size == objects.length) {
+      objects = Arrays.copyOf(objects, size * 2);
+    }
+    objects[size] = o;
+    insert(o, size);
+    if (++entries > table.length * 2L / 3) grow();
+    return size++;
+  }
+
+  private void insert(Object o, int number) {
+    int mask = table.length - 1;
+    int i = indexOf(o);
+    while (table[i] != null) {
+      Preconditions.checkArgument(table[i] != o, "Already added");
+      i = (i + 1) & mask;
+    }
+    table[i] = o;
+    numbers[i] = number;
+  }
+
+  /**
+   * Adds a number that stands for no object (and thus can only be looked up
+   * by number, as {@code null}), and returns it.
+   */
+  int addAnonymous() {
+    if (size == objects.length) {
+      objects = Arrays.copyOf(objects, size * 2);
+    }
+    return size++;
+  }
+
+  /**
+   * Returns the object of the given number ({@code null} for anonymous
+   * numbers).
+   */
+  Object get(int number) {
+    Preconditions.checkElementIndex(number, size);
+    return objects[number];
+  }
+
+  int size() {
+    return size;
+  }
+
+  private void grow() {
+    Preconditions.checkState(table.length < MAXIMUM_CAPACITY, "Identity index is full");
+    allocate(table.length << 1);
+    for (int number = 0; number <= size; number++) {
+      if (objects[number] != null) insert(objects[number], number);
+    }
+  }
+}
@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * BEGIN COPYRIGHT NOTICE
+ * 
+ * Copyright [2011] [Rodrigo Lemos]
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * END COPYRIGHT NOTICE
+ ******************************************************************************/
+package objectexplorer;
+
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A set of objects compared by identity, which only stores the references
+ * themselves, in a single open-addressed (linearly probed) table.
+ *
+ * <p>Compared to an {@code IdentityHashMap} used as a set, this takes half
+ * the slots per element, can be sized upfront for the expected number of
+ * elements (so that it never needs to grow), and can be cleared and reused.
+ * {@code null} is a valid element. Not thread-safe.
+ */
+final class IdentitySet {
+  private static final int MINIMUM_CAPACITY = 16;
+  private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+  private Object[] table;
+  private int shift;
+  private int threshold;
+  private int size;
+  private boolean containsNull;
+
+  IdentitySet() {
+    this(0);
+  }
+
+  /**
+   * Creates a set that can hold {@code expectedSize} elements without
+   * growing.
+   */
+  IdentitySet(int expectedSize) {
+    Preconditions.checkArgument(expectedSize >= 0, "Negative expected size");
+    allocate(capacityFor(expectedSize));
+  }
+
+  // at most 2/3 full
+  private static int capacityFor(int expectedSize) {
+    long minimum = expectedSize + (expectedSize + 1L) / 2;
+    int capacity = MINIMUM_CAPACITY;
+    while (capacity < minimum && capacity < MAXIMUM_CAPACITY) {
+      capacity <<= 1;
+    }
+    return capacity;
+  }
+
+  private void allocate(int capacity) {
+    table = new Object[capacity];
+    shift = Integer.numberOfLeadingZeros(capacity) + 1;
+    threshold = (int) (capacity * 2L / 3);
+  }
+
+  private int indexOf(Object o) {
+    // fibonacci hashing, as identity hash codes are not well spread in their low bits
+    return (System.identityHashCode(o) * 0x9E3779B9) >>> shift;
+  }
+
+  /**
+   * Adds an object to this set, and returns whether it was not already
+   * present.
+   */
+  boolean add(Object o) {
+    if (o == null) {
+      if (containsNull) return false;
+      containsNull = true;
+      size++;
+      return true;
+    }
+    Object[] table = this.table;
+    int mask = table.length - 1;
+    for (int i = indexOf(o); ; i = (i + 1) & mask) {
+      Object current = table[i];
+      if (current == null) {
+        table[i] = o;
+        if (++size > threshold) grow();
+        return true;
+      } else if (current == o) {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Returns whether the given object is present in this set.
+   */
+  boolean contains(Object o) {
+    if (o == null) return containsNull;
+    Object[] table = this.table;
+    int mask = table.length - 1;
+    for (int i = indexOf(o); ; i = (i + 1) & mask) {
+      Object current = table[i];
+      if (current == null) {
+        return false;
+      } else if (current == o) {
+        return true;
+      }
+    }
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * Removes all elements, keeping the current capacity for reuse.
+   */
+  void clear() {
+    Arrays.fill(table, null);
+    size = 0;
+    containsNull = false;
+  }
+
+  private void grow() {
+    Preconditions.checkState(table.length < MAXIMUM_CAPACITY, "Identity set is full");
+    Object[] oldTable = table;
+    allocate(oldTable.length << 1);
+    int mask = table.length - 1;
+    for (Object o : oldTable) {
+      if (o == null) continue;
+      int i = indexOf(o);
+      while (table[i] != null) {
+        i = (i + 1) & mask;
+      }
+      table[i] = o;
+    }
+  }
+}
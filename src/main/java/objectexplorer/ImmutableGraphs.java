@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * BEGIN COPYRIGHT NOTICE
+ * 
+ * Copyright [2011] [Rodrigo Lemos]
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * END COPYRIGHT NOTICE
+ ******************************************************************************/
+package objectexplorer;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.MapMaker;
+
+/**
+ * A registry of objects whose whole object graph never changes, such as
+ * immutable lookup tables. {@link MemoryMeasurer} measures the graph of such
+ * an object once, remembers its size and objects, and charges them all at
+ * once whenever the object is reached again, instead of exploring it.
+ *
+ * <p>Registering an object (or class) that is not deeply immutable makes
+ * measurements miss whatever changed in its graph since it was first
+ * measured. Registered graphs are measured as by
+ * {@link MemoryMeasurer#measureBytes(Object)}, so measurements with a
+ * predicate, and measurements carried out in slices (see
+ * {@link MemoryMeasurer#newMeasurement}), explore them like any other graph
+ * instead. Registered instances are only weakly referenced.
+ */
+public final class ImmutableGraphs {
+  private static final Set<Class<?>> classes = new CopyOnWriteArraySet<Class<?>>();
+  // whether each class is a registered class or one of its subclasses
+  private static volatile ConcurrentMap<Class<?>, Boolean> registeredTypes = newTypeCache();
+  private static final ConcurrentMap<Object, Boolean> instances =
+      new MapMaker().weakKeys().makeMap();
+  private static volatile boolean empty = true;
+
+  private ImmutableGraphs() {}
+
+  /**
+   * Registers every instance of the given class (or of its subclasses) as
+   * deeply immutable.
+   */
+  public static void registerClass(Class<?> type) {
+    Preconditions.checkNotNull(type, "type");
+    classes.add(type);
+    // replaced rather than cleared, so that no decision made before is cached
+    registeredTypes = newTypeCache();
+    empty = false;
+  }
+
+  /**
+   * Registers the given object as deeply immutable.
+   */
+  public static void registerInstance(Object object) {
+    Preconditions.checkNotNull(object, "object");
+    instances.put(object, Boolean.TRUE);
+    empty = false;
+  }
+
+  /**
+   * Returns whether the given object was registered as deeply immutable,
+   * either by itself or through its class.
+   */
+  public static boolean isRegistered(Object object) {
+    if (empty || object == null) return false;
+    return isRegisteredType(object.getClass()) || instances.containsKey(object);
+  }
+
+  private static boolean isRegisteredType(Class<?> type) {
+    ConcurrentMap<Class<?>, Boolean> registeredTypes = ImmutableGraphs.registeredTypes;
+    if (classes.isEmpty()) return false;
+    Boolean registered = registeredTypes.get(type);
+    if (registered == null) {
+      registered = false;
+      for (Class<?> registeredClass : classes) {
+        if (registeredClass.isAssignableFrom(type)) {
+          registered = true;
+          break;
+        }
+      }
+      registeredTypes.put(type, registered);
+    }
+    return registered;
+  }
+
+  private static ConcurrentMap<Class<?>, Boolean> newTypeCache() {
+    return new MapMaker().weakKeys().makeMap();
+  }
+}
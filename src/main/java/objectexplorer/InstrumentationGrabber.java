@@ -20,28 +20,168 @@
 package objectexplorer;
 
 import com.google.common.base.Preconditions;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.lang.instrument.Instrumentation;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
 
 /**
- * Agent call-back that stores the {@link Instrumentation} provided by the JVM.
+ * Agent call-back that stores the {@link Instrumentation} provided by the JVM,
+ * either at startup ({@code -javaagent}) or when the agent is loaded into the
+ * running JVM (see {@link #attach()}).
  * 
  * <p>Not to be used directly.
  */
 public class InstrumentationGrabber {
     private static volatile Instrumentation instrumentation;
 
+    // whether loading the agent into the running VM has already failed
+    private static volatile boolean attachFailed;
+
     public static void premain(String agentArgs, Instrumentation inst) {
         if (InstrumentationGrabber.instrumentation != null) throw new AssertionError("Already initialized");
         InstrumentationGrabber.instrumentation = inst;
     }
 
+    public static void agentmain(String agentArgs, Instrumentation inst) {
+        // the agent may be loaded more than once; any instrumentation will do
+        if (InstrumentationGrabber.instrumentation == null) {
+            InstrumentationGrabber.instrumentation = inst;
+        }
+    }
+
     private static void checkSetup() {
         Preconditions.checkState(instrumentation != null, "Instrumentation is not setup properly. "
                 + "You have to pass -javaagent:path/to/object-explorer.jar to the java interpreter");
     }
 
+    static boolean isSetUp() {
+        return instrumentation != null;
+    }
+
     static Instrumentation instrumentation() {
         checkSetup();
         return instrumentation;
     }
+
+    /**
+     * Loads the agent into the running JVM, through the Attach API, unless it
+     * is already loaded.
+     *
+     * @throws IllegalStateException if the agent could not be loaded, e.g.
+     * because the JVM does not allow attaching to itself
+     */
+    static synchronized void attach() {
+        if (instrumentation != null) return;
+        try {
+            loadAgent();
+        } catch (Exception e) {
+            attachFailed = true;
+            Throwable cause = e instanceof InvocationTargetException ? e.getCause() : e;
+            throw new IllegalStateException("Could not load the agent into the running JVM ("
+                    + cause + "). Either pass -javaagent:path/to/object-explorer.jar to the java "
+                    + "interpreter, or allow the JVM to attach to itself with "
+                    + "-Djdk.attach.allowAttachSelf=true", cause);
+        }
+        if (instrumentation == null) {
+            attachFailed = true;
+            throw new IllegalStateException("The agent was loaded into the running JVM, but by a "
+                    + "different class loader than " + InstrumentationGrabber.class.getClassLoader()
+                    + ". You have to pass -javaagent:path/to/object-explorer.jar to the java "
+                    + "interpreter");
+        }
+    }
+
+    /**
+     * Tries to load the agent into the running JVM, unless it is already
+     * loaded or a previous attempt failed, and returns whether it is loaded.
+     */
+    static boolean tryAttach() {
+        // called for every measurement, so only lock while attaching may still succeed
+        if (instrumentation != null) return true;
+        if (attachFailed) return false;
+        synchronized (InstrumentationGrabber.class) {
+            if (instrumentation == null && !attachFailed) {
+                try {
+                    attach();
+                } catch (IllegalStateException e) {
+                    // remembered by attachFailed
+                }
+            }
+            return instrumentation != null;
+        }
+    }
+
+    private static void loadAgent() throws Exception {
+        Class<?> virtualMachine = attachApi();
+        // "pid@host" on every JVM that matters
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        String pid = name.substring(0, name.indexOf('@'));
+        Object vm = virtualMachine.getMethod("attach", String.class).invoke(null, pid);
+        try {
+            virtualMachine.getMethod("loadAgent", String.class)
+                    .invoke(vm, agentJar().getAbsolutePath());
+        } finally {
+            virtualMachine.getMethod("detach").invoke(vm);
+        }
+    }
+
+    /**
+     * Returns the {@code VirtualMachine} class of the Attach API, which lives
+     * in {@code tools.jar} before Java 9.
+     */
+    private static Class<?> attachApi() throws Exception {
+        String className = "com.sun.tools.attach.VirtualMachine";
+        try {
+            return Class.forName(className);
+        } catch (ClassNotFoundException e) {
+            File toolsJar = new File(System.getProperty("java.home"), "../lib/tools.jar");
+            if (!toolsJar.isFile()) throw e;
+            ClassLoader loader = new URLClassLoader(new URL[] { toolsJar.toURI().toURL() });
+            return Class.forName(className, true, loader);
+        }
+    }
+
+    /**
+     * Returns the jar this class comes from, if it declares the agent, or else
+     * a temporary jar that declares it (the class itself is then found in the
+     * class path).
+     */
+    private static File agentJar() throws IOException {
+        URL location = InstrumentationGrabber.class.getProtectionDomain().getCodeSource().getLocation();
+        if (location != null && location.getPath().endsWith(".jar")) {
+            try {
+                File jar = new File(location.toURI());
+                JarFile jarFile = new JarFile(jar);
+                try {
+                    Manifest manifest = jarFile.getManifest();
+                    if (manifest != null && InstrumentationGrabber.class.getName().equals(
+                            manifest.getMainAttributes().getValue("Agent-Class"))) {
+                        return jar;
+                    }
+                } finally {
+                    jarFile.close();
+                }
+            } catch (Exception e) {
+                // not a plain jar file; fall back to a temporary jar
+            }
+        }
+
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().putValue("Agent-Class", InstrumentationGrabber.class.getName());
+        File jar = File.createTempFile("object-explorer-agent", ".jar");
+        jar.deleteOnExit();
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(jar), manifest);
+        out.close();
+        return jar;
+    }
 }
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * BEGIN COPYRIGHT NOTICE
+ * 
+ * Copyright [2011] [Rodrigo Lemos]
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * END COPYRIGHT NOTICE
+ ******************************************************************************/
+package objectexplorer;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Predicate;
+
+/**
+ * The predicate that decides which values a measurement explores: neither
+ * {@code Class} objects, nor values of enum types, nor
+ * {@link SharedConstants shared constants}, nor values that the object
+ * acceptor rejects, and, if given an at-most-once predicate, only values seen
+ * for the first time.
+ *
+ * <p>This is the fused equivalent of {@code Predicates.and} of each of these
+ * predicates: whether a declared type is an enum is cached per class, and an
+ * acceptor that is a {@link TraversalFilter} is asked directly (along with
+ * its field rules).
+ */
+final class MeasurementPredicate implements Predicate<Edge> {
+  private static final ClassValue<Boolean> enumTypes = new ClassValue<Boolean>() {
+    @Override
+    protected Boolean computeValue(Class<?> type) {
+      return Enum.class.isAssignableFrom(type);
+    }
+  };
+
+  private final Predicate<Object> objectAcceptor;
+  @Nullable private final TraversalFilter filter;
+  @Nullable private final Predicate<Edge> atMostOnce;
+
+  /**
+   * Values are only checked against the at-most-once predicate after all
+   * other predicates accepted them, so that whether a value is measured does
+   * not depend on which of its references happens to be explored first.
+   *
+   * @param atMostOnce the at-most-once predicate, or {@code null} to accept
+   * values however many times they are seen
+   */
+  MeasurementPredicate(Predicate<Object> objectAcceptor, @Nullable Predicate<Edge> atMostOnce) {
+    this.objectAcceptor = objectAcceptor;
+    this.filter = objectAcceptor instanceof TraversalFilter
+        ? (TraversalFilter) objectAcceptor : null;
+    this.atMostOnce = atMostOnce;
+  }
+
+  public boolean apply(Edge edge) {
+    Object value = edge.getValue();
+    if (enumTypes.get(edge.getValueType())
+        || value instanceof Class<?>
+        || SharedConstants.isSharedConstant(value)) {
+      return false;
+    }
+    if (filter != null ? !filter.accepts(edge) : !objectAcceptor.apply(value)) {
+      return false;
+    }
+    return atMostOnce == null || atMostOnce.apply(edge);
+  }
+}
@@ -19,47 +19,90 @@
  ******************************************************************************/
 package objectexplorer;
 
+import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
+import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
 
 import java.lang.instrument.Instrumentation;
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import objectexplorer.Edge.Reachability;
+import objectexplorer.ObjectExplorer.Feature;
+import objectexplorer.ObjectExplorer.Merger;
+import objectexplorer.ObjectVisitor.Traversal;
 
 /**
  * A utility that can be used to measure the memory footprint of an arbitrary
  * object graph. In a nutshell, the user gives a root object, and this class
  * recursively and reflectively explores the object's references.
  *
- * <p>This class can only be used if the containing jar has been given to the
- * Java VM as an agent, as follows:
- * {@code -javaagent:path/to/object-explorer.jar}
+ * <p>Object sizes are given by {@link Instrumentation#getObjectSize(Object)}
+ * if the containing jar has been given to the Java VM as an agent, as
+ * follows: {@code -javaagent:path/to/object-explorer.jar}. Otherwise, the
+ * first measurement loads the agent into the running VM (see
+ * {@link #attachAgent()}), and if that is not allowed, sizes are computed by
+ * the {@link MemoryModel#current() memory model} of the running VM, which can
+ * also be chosen explicitly (see {@link #measureBytes(Object, MemoryModel)}),
+ * since it is faster.
  *
  * @see #measureBytes(Object)
  * @see #measureBytes(Object, Predicate)
+ * @see #measureBytesByReachability(Object)
+ * @see #measureHistogram(Object)
+ * @see #measureRetainedSizes(Object)
+ * @see #measureUnion(Iterable)
+ * @see #measureElements(Iterable)
+ * @see #estimateBytes(Collection, double)
+ * @see ImmutableGraphs
  */
 public class MemoryMeasurer {
-  private static final Instrumentation instrumentation =
-    InstrumentationGrabber.instrumentation();
-
-  /*
-   * The bare minimum memory footprint of an enum value, measured empirically.
-   * This should be subtracted for any enum value encountered, since it
-   * is static in nature.
-   */
-  private static final long costOfBareEnumConstant =
-    instrumentation.getObjectSize(DummyEnum.CONSTANT);
+  // created the first time each one is used
+  private static volatile ObjectSizer instrumentationSizer;
+  private static volatile ObjectSizer currentModelSizer;
 
   private enum DummyEnum {
     CONSTANT;
   }
 
+  /**
+   * Loads the agent into the running VM, unless it was given at startup or
+   * has already been loaded. This lets a live VM be measured with the sizes
+   * reported by the VM itself, without a restart.
+   *
+   * <p>Attaching to the running VM must be allowed, which requires the
+   * {@code -Djdk.attach.allowAttachSelf=true} flag since Java 9, and the
+   * Attach API ({@code jdk.attach} module, or {@code tools.jar} before Java 9)
+   * to be present.
+   *
+   * @throws IllegalStateException if the agent could not be loaded
+   */
+  public static void attachAgent() {
+    InstrumentationGrabber.attach();
+  }
+
   /**
    * Measures the memory footprint, in bytes, of an object graph. The object
    * graph is defined by a root object and whatever object can be reached
-   * through that, excluding static fields, {@code Class} objects, and
-   * fields defined in {@code enum}s (all these are considered shared values,
-   * which should not contribute to the cost of any single object graph).
+   * through that, excluding static fields, {@code Class} objects, fields
+   * defined in {@code enum}s and {@link SharedConstants shared constants}
+   * (all these are considered shared values, which should not contribute to
+   * the cost of any single object graph).
    *
    * <p>Equivalent to {@code measureBytes(rootObject,
    * Predicates.alwaysTrue())}.
@@ -75,9 +118,10 @@ public class MemoryMeasurer {
   /**
    * Measures the memory footprint, in bytes, of an object graph. The object
    * graph is defined by a root object and whatever object can be reached
-   * through that, excluding static fields, {@code Class} objects, and
-   * fields defined in {@code enum}s (all these are considered shared values,
-   * which should not contribute to the cost of any single object graph), and
+   * through that, excluding static fields, {@code Class} objects, fields
+   * defined in {@code enum}s and {@link SharedConstants shared constants}
+   * (all these are considered shared values, which should not contribute to
+   * the cost of any single object graph), and
    * any object for which the user-provided predicate returns {@code false}.
    *
    * @param rootObject the root object that defines the object graph to be
@@ -90,30 +134,864 @@ public class MemoryMeasurer {
   public static long measureBytes(Object rootObject, Predicate<Object> objectAcceptor) {
     Preconditions.checkNotNull(objectAcceptor, "predicate");
 
-    Predicate<Chain> completePredicate = Predicates.and(ImmutableList.of(
-        new ObjectExplorer.AtMostOncePredicate(),
-        ObjectExplorer.notEnumFieldsOrClasses,
-        Predicates.compose(objectAcceptor, ObjectExplorer.chainToObject)
-    ));
+    return ObjectExplorer.exploreObject(rootObject,
+        memoizingVisitor(defaultSizer(), objectAcceptor));
+  }
+
+  /**
+   * Measures the memory footprint, in bytes, of an object graph, as
+   * {@link #measureBytes(Object)} does, but with object sizes given by the
+   * given memory model rather than by the agent. This does not need the
+   * agent, and is faster; with {@link MemoryModel#current()}, it gives the
+   * same result as the agent.
+   *
+   * @param rootObject the root object that defines the object graph to be
+   * measured
+   * @param model the memory model that gives the size of each object
+   * @return the memory footprint, in bytes, of the object graph
+   */
+  public static long measureBytes(Object rootObject, MemoryModel model) {
+    return measureBytes(rootObject, Predicates.alwaysTrue(), model);
+  }
+
+  /**
+   * Measures the memory footprint, in bytes, of an object graph, as
+   * {@link #measureBytes(Object, Predicate)} does, but with object sizes
+   * given by the given memory model rather than by the agent.
+   *
+   * @param rootObject the root object that defines the object graph to be
+   * measured
+   * @param objectAcceptor a predicate that returns {@code true} for objects
+   * to be explored (and treated as part of the object graph), or
+   * {@code false} to forbid the traversal to traverse the given object
+   * @param model the memory model that gives the size of each object
+   * @return the memory footprint, in bytes, of the object graph
+   * @see #measureBytes(Object, MemoryModel)
+   */
+  public static long measureBytes(Object rootObject, Predicate<Object> objectAcceptor,
+      MemoryModel model) {
+    Preconditions.checkNotNull(objectAcceptor, "predicate");
+    Preconditions.checkNotNull(model, "model");
+
+    return ObjectExplorer.exploreObject(rootObject,
+        memoizingVisitor(sizerOf(model), objectAcceptor));
+  }
+
+  /**
+   * Measures the memory footprint, in bytes, of the union of several object
+   * graphs, each one defined by a root object as in
+   * {@link #measureBytes(Object)}. Objects shared by several graphs are only
+   * counted once, for the first root (in iteration order) they are reached
+   * from, and no container of the roots is counted.
+   *
+   * <p>The graphs are explored one after the other with a single set of
+   * visited objects, so each object of the union is only explored once.
+   *
+   * @param rootObjects the root objects that define the object graphs to be
+   * measured
+   * @return the memory footprint of the union of the object graphs, along
+   * with the bytes first reached from each root
+   */
+  public static UnionBytes measureUnion(Iterable<?> rootObjects) {
+    return measureUnion(rootObjects, Predicates.alwaysTrue());
+  }
+
+  /**
+   * Measures the memory footprint, in bytes, of the union of several object
+   * graphs, as {@link #measureUnion(Iterable)} does, excluding any object for
+   * which the user-provided predicate returns {@code false}.
+   *
+   * @param rootObjects the root objects that define the object graphs to be
+   * measured
+   * @param objectAcceptor a predicate that returns {@code true} for objects
+   * to be explored (and treated as part of the object graph), or
+   * {@code false} to forbid the traversal to traverse the given object
+   * @return the memory footprint of the union of the object graphs, along
+   * with the bytes first reached from each root
+   */
+  public static UnionBytes measureUnion(Iterable<?> rootObjects,
+      Predicate<Object> objectAcceptor) {
+    Preconditions.checkNotNull(rootObjects, "rootObjects");
+    Preconditions.checkNotNull(objectAcceptor, "predicate");
+
+    ObjectSizer sizer = defaultSizer();
+    // shared by all roots
+    ObjectExplorer.AtMostOnceEdgePredicate atMostOnce =
+        new ObjectExplorer.AtMostOnceEdgePredicate();
+    Predicate<Edge> completePredicate = completePredicate(objectAcceptor, atMostOnce);
+    ObjectExplorer.AtMostOnceEdgePredicate memoizing =
+        memoizes(objectAcceptor) ? atMostOnce : null;
+    List<Long> bytes = Lists.newArrayList();
+    for (Object rootObject : rootObjects) {
+      bytes.add(ObjectExplorer.exploreObject(rootObject,
+          new MemoryMeasurerVisitor(sizer, completePredicate, memoizing)));
+    }
+    return new UnionBytes(bytes);
+  }
+
+  /**
+   * Measures, for each element of a collection, the memory footprint of its
+   * object graph (defined as in {@link #measureBytes(Object)}), split between
+   * the bytes exclusive to the element and the bytes it shares with other
+   * elements. The exclusive bytes of an element are those that would be freed
+   * if it was removed from the collection (and nothing else referenced it),
+   * which is the natural weight for evicting it from a cache. Shared objects
+   * are counted for the first element (in iteration order) that reaches
+   * them, so that exclusive and shared bytes of all elements add up to the
+   * footprint of their union. The collection itself is not counted.
+   *
+   * <p>All elements are explored in a single traversal, which records the
+   * graph of their union, and the exclusive bytes come from its dominator
+   * tree (see {@link #measureRetainedSizes(Object)}), so this takes memory
+   * proportional to the number of objects and references of the union.
+   *
+   * @param elements the elements to be measured
+   * @return the exclusive and shared bytes of each element, in iteration
+   * order
+   */
+  public static ElementBytes measureElements(Iterable<?> elements) {
+    return measureElements(elements, Predicates.alwaysTrue());
+  }
+
+  /**
+   * Measures, for each element of a collection, its exclusive and shared
+   * bytes, as {@link #measureElements(Iterable)} does, excluding any object
+   * for which the user-provided predicate returns {@code false}.
+   *
+   * @param elements the elements to be measured
+   * @param objectAcceptor a predicate that returns {@code true} for objects
+   * to be explored (and treated as part of the object graph), or
+   * {@code false} to forbid the traversal to traverse the given object
+   * @return the exclusive and shared bytes of each element, in iteration
+   * order
+   */
+  public static ElementBytes measureElements(Iterable<?> elements,
+      Predicate<Object> objectAcceptor) {
+    Preconditions.checkNotNull(elements, "elements");
+    Preconditions.checkNotNull(objectAcceptor, "predicate");
+
+    ElementsVisitor visitor = newElementsVisitor(objectAcceptor);
+    for (Object element : elements) {
+      visitor.startElement();
+      ObjectExplorer.exploreObject(element, visitor);
+    }
+    return visitor.elementBytes();
+  }
+
+  /**
+   * Measures, for each entry of a map, the exclusive and shared bytes of its
+   * key and value together, as {@link #measureElements(Iterable)} does for
+   * the elements of a collection. The map itself (including its internal
+   * entry objects) is not counted.
+   *
+   * @param map the map whose entries are to be measured
+   * @return the exclusive and shared bytes of each entry, in the iteration
+   * order of the map
+   */
+  public static ElementBytes measureEntries(Map<?, ?> map) {
+    Preconditions.checkNotNull(map, "map");
+
+    ElementsVisitor visitor = newElementsVisitor(Predicates.alwaysTrue());
+    for (Map.Entry<?, ?> entry : map.entrySet()) {
+      visitor.startElement();
+      ObjectExplorer.exploreObject(entry.getKey(), visitor);
+      ObjectExplorer.exploreObject(entry.getValue(), visitor);
+    }
+    return visitor.elementBytes();
+  }
+
+  private static ElementsVisitor newElementsVisitor(Predicate<Object> objectAcceptor) {
+    return new ElementsVisitor(defaultSizer(), new MeasurementPredicate(objectAcceptor, null));
+  }
+
+  /**
+   * The memory footprint of each element of a collection (or entry of a
+   * map), split between exclusive and shared bytes, as primitive arrays.
+   *
+   * @see MemoryMeasurer#measureElements(Iterable)
+   */
+  public static class ElementBytes {
+    private final long[] exclusiveBytes;
+    private final long[] sharedBytes;
+
+    ElementBytes(long[] exclusiveBytes, long[] sharedBytes) {
+      this.exclusiveBytes = exclusiveBytes;
+      this.sharedBytes = sharedBytes;
+    }
+
+    /**
+     * Returns the number of measured elements.
+     */
+    public int size() {
+      return exclusiveBytes.length;
+    }
+
+    /**
+     * Returns the number of bytes only reachable from the element at the
+     * given position.
+     */
+    public long getExclusiveBytes(int element) {
+      return exclusiveBytes[element];
+    }
+
+    /**
+     * Returns the number of bytes reachable from the element at the given
+     * position and from other elements, for which it was the first element
+     * to reach them.
+     */
+    public long getSharedBytes(int element) {
+      return sharedBytes[element];
+    }
+
+    /**
+     * Returns the exclusive bytes of all elements, in order (a new array).
+     */
+    public long[] getExclusiveBytes() {
+      return exclusiveBytes.clone();
+    }
+
+    /**
+     * Returns the shared bytes of all elements, in order (a new array).
+     */
+    public long[] getSharedBytes() {
+      return sharedBytes.clone();
+    }
+
+    /**
+     * Returns the number of bytes of the union of the elements' object
+     * graphs, which is the sum of all exclusive and shared bytes.
+     */
+    public long getTotalBytes() {
+      long total = 0;
+      for (int i = 0; i < exclusiveBytes.length; i++) {
+        total += exclusiveBytes[i] + sharedBytes[i];
+      }
+      return total;
+    }
+
+    @Override
+    public String toString() {
+      return Objects.toStringHelper(this)
+      .add("Elements", size())
+      .add("Total", getTotalBytes())
+      .toString();
+    }
+  }
+
+  /**
+   * The number of elements sampled first when estimating a footprint within
+   * a relative error.
+   */
+  private static final int INITIAL_SAMPLES = 1000;
+
+  /**
+   * Estimates the memory footprint, in bytes, of a collection and its
+   * elements (as {@link #measureBytes(Object)} would measure it), by only
+   * measuring a random fraction of the elements. The backbone of the
+   * collection (the collection itself, along with its arrays and nodes) is
+   * measured exactly, and the bytes of the elements are extrapolated from
+   * the ones sampled, with a 95% confidence interval.
+   *
+   * <p>Objects shared by the sampled elements are counted for the first one
+   * that reaches them, and extrapolated as any other bytes, so widely shared
+   * objects make the estimate err on the high side. Identifying the backbone
+   * takes a set of all the elements, but none of their objects is visited
+   * unless they are sampled.
+   *
+   * @param collection the collection whose footprint is to be estimated
+   * @param samplingFraction the probability of each element to be measured,
+   * between 0 (exclusive) and 1 (inclusive)
+   * @return the estimated footprint of the collection
+   */
+  public static SizeEstimate estimateBytes(Collection<?> collection, double samplingFraction) {
+    checkSamplingFraction(samplingFraction);
+    return estimate(collection, collection, collection.size(), false, samplingFraction,
+        Double.POSITIVE_INFINITY);
+  }
+
+  /**
+   * Estimates the memory footprint, in bytes, of a map and its keys and
+   * values, as {@link #estimateBytes(Collection, double)} does for a
+   * collection, by only measuring the key and value of a random fraction of
+   * the entries.
+   *
+   * @param map the map whose footprint is to be estimated
+   * @param samplingFraction the probability of each entry to be measured,
+   * between 0 (exclusive) and 1 (inclusive)
+   * @return the estimated footprint of the map
+   */
+  public static SizeEstimate estimateBytes(Map<?, ?> map, double samplingFraction) {
+    checkSamplingFraction(samplingFraction);
+    return estimate(map, map.entrySet(), map.size(), true, samplingFraction,
+        Double.POSITIVE_INFINITY);
+  }
+
+  /**
+   * Estimates the memory footprint, in bytes, of a collection and its
+   * elements, as {@link #estimateBytes(Collection, double)} does, sampling
+   * as many elements as it takes for the confidence interval to be within
+   * the given relative error (or all of them).
+   *
+   * @param collection the collection whose footprint is to be estimated
+   * @param targetRelativeError the maximum half width of the confidence
+   * interval relative to the estimate (e.g. {@code 0.01} for 1%)
+   * @return the estimated footprint of the collection
+   */
+  public static SizeEstimate estimateBytesWithin(Collection<?> collection,
+      double targetRelativeError) {
+    checkTargetRelativeError(targetRelativeError);
+    return estimate(collection, collection, collection.size(), false,
+        initialSamplingFraction(collection.size()), targetRelativeError);
+  }
+
+  /**
+   * Estimates the memory footprint, in bytes, of a map and its keys and
+   * values, as {@link #estimateBytes(Map, double)} does, sampling as many
+   * entries as it takes for the confidence interval to be within the given
+   * relative error (or all of them).
+   *
+   * @param map the map whose footprint is to be estimated
+   * @param targetRelativeError the maximum half width of the confidence
+   * interval relative to the estimate (e.g. {@code 0.01} for 1%)
+   * @return the estimated footprint of the map
+   */
+  public static SizeEstimate estimateBytesWithin(Map<?, ?> map, double targetRelativeError) {
+    checkTargetRelativeError(targetRelativeError);
+    return estimate(map, map.entrySet(), map.size(), true,
+        initialSamplingFraction(map.size()), targetRelativeError);
+  }
+
+  private static void checkSamplingFraction(double samplingFraction) {
+    Preconditions.checkArgument(samplingFraction > 0 && samplingFraction <= 1,
+        "Sampling fraction not in (0, 1]: %s", samplingFraction);
+  }
+
+  private static void checkTargetRelativeError(double targetRelativeError) {
+    Preconditions.checkArgument(targetRelativeError > 0,
+        "Target relative error not positive: %s", targetRelativeError);
+  }
+
+  private static double initialSamplingFraction(int elements) {
+    return Math.min(1, (double) INITIAL_SAMPLES / Math.max(elements, 1));
+  }
+
+  /*
+   * Elements are sampled in rounds of increasing fractions until the target
+   * error is met. Each round draws the same random number per element (from
+   * the same seed), and samples the elements whose number falls between the
+   * previous fraction and the new one, so that no element is sampled twice.
+   */
+  private static SizeEstimate estimate(Object container, Iterable<?> elements, int size,
+      boolean entries, double samplingFraction, double targetRelativeError) {
+    ObjectSizer sizer = defaultSizer();
+    final IdentitySet elementSet = new IdentitySet(
+        entries ? (int) Math.min(2L * size, Integer.MAX_VALUE) : size);
+    long count = 0;
+    for (Object element : elements) {
+      if (entries) {
+        Map.Entry<?, ?> entry = (Map.Entry<?, ?>) element;
+        elementSet.add(entry.getKey());
+        elementSet.add(entry.getValue());
+      } else {
+        elementSet.add(element);
+      }
+      count++;
+    }
+
+    // shared by the backbone and all sampled elements
+    ObjectExplorer.AtMostOnceEdgePredicate atMostOnce =
+        new ObjectExplorer.AtMostOnceEdgePredicate(size);
+    long backboneBytes = ObjectExplorer.exploreObject(container,
+        new MemoryMeasurerVisitor(sizer, completePredicate(new Predicate<Object>() {
+          public boolean apply(Object o) {
+            return !elementSet.contains(o);
+          }
+        }, atMostOnce)));
+    Predicate<Edge> elementPredicate = completePredicate(Predicates.alwaysTrue(), atMostOnce);
+
+    long seed = new Random().nextLong();
+    long sampled = 0;
+    double mean = 0;
+    double squares = 0;
+    double previousFraction = 0;
+    while (true) {
+      Random random = new Random(seed);
+      for (Object element : elements) {
+        double draw = random.nextDouble();
+        if (draw < previousFraction || draw >= samplingFraction) continue;
+        long bytes;
+        if (entries) {
+          Map.Entry<?, ?> entry = (Map.Entry<?, ?>) element;
+          bytes = ObjectExplorer.exploreObject(entry.getKey(),
+              new MemoryMeasurerVisitor(sizer, elementPredicate, atMostOnce))
+              + ObjectExplorer.exploreObject(entry.getValue(),
+                  new MemoryMeasurerVisitor(sizer, elementPredicate, atMostOnce));
+        } else {
+          bytes = ObjectExplorer.exploreObject(element,
+              new MemoryMeasurerVisitor(sizer, elementPredicate, atMostOnce));
+        }
+        // Welford's online mean and variance
+        sampled++;
+        double delta = bytes - mean;
+        mean += delta / sampled;
+        squares += delta * (bytes - mean);
+      }
+
+      SizeEstimate estimate = SizeEstimate.of(backboneBytes, count, sampled, mean,
+          sampled > 1 ? squares / (sampled - 1) : 0);
+      double relativeError = estimate.getRelativeError();
+      if (samplingFraction >= 1 || relativeError <= targetRelativeError) {
+        return estimate;
+      }
+      previousFraction = samplingFraction;
+      // the error shrinks with the square root of the number of samples
+      double needed = relativeError == Double.POSITIVE_INFINITY ? 4
+          : Math.pow(relativeError / targetRelativeError, 2);
+      samplingFraction = Math.min(1, samplingFraction * Math.max(needed * 1.1, 1.5));
+    }
+  }
+
+  /**
+   * The memory footprint of the union of several object graphs, along with
+   * the share of each graph.
+   *
+   * @see MemoryMeasurer#measureUnion(Iterable)
+   */
+  public static class UnionBytes {
+    private final ImmutableList<Long> bytes;
+    private final long total;
+
+    UnionBytes(List<Long> bytes) {
+      this.bytes = ImmutableList.copyOf(bytes);
+      long total = 0;
+      for (long rootBytes : bytes) {
+        total += rootBytes;
+      }
+      this.total = total;
+    }
+
+    /**
+     * Returns the number of bytes of the union of the object graphs, where
+     * shared objects are only counted once.
+     */
+    public long getTotalBytes() {
+      return total;
+    }
+
+    /**
+     * Returns the number of bytes of the objects that were first reached from
+     * each root, in the order of the roots. They add up to the total.
+     */
+    public List<Long> getBytesFirstReachedPerRoot() {
+      return bytes;
+    }
+
+    @Override
+    public String toString() {
+      return Objects.toStringHelper(this)
+      .add("Total", total)
+      .add("PerRoot", bytes)
+      .toString();
+    }
+  }
+
+  /**
+   * Measures the memory footprint, in bytes, of the part of an object graph
+   * that is at most {@code maxDepth} references away from the root object.
+   * For example, a depth of {@code 0} gives the shallow size of the root
+   * object, and a depth of {@code 1} adds the objects it directly references.
+   * Only that part of the graph is explored, so shallow measurements are
+   * cheap regardless of the size of the whole graph.
+   *
+   * <p>The same objects as in {@link #measureBytes(Object)} are excluded,
+   * and each object is counted once, at its shortest distance from the root
+   * object.
+   *
+   * @param rootObject the root object that defines the object graph to be
+   * measured
+   * @param maxDepth the maximum depth of the measured objects
+   * @return the memory footprint, in bytes, of the measured part of the
+   * object graph
+   * @throws IllegalArgumentException if {@code maxDepth} is negative
+   */
+  public static long measureBytes(Object rootObject, int maxDepth) {
+    return ObjectExplorer.exploreObject(rootObject,
+        new MemoryMeasurerVisitor(defaultSizer(), completePredicate(Predicates.alwaysTrue(),
+            new ObjectExplorer.AtMostOnceEdgePredicate())),
+        EnumSet.of(Feature.BREADTH_FIRST), maxDepth);
+  }
+
+  /**
+   * Prepares the measurement of the memory footprint, in bytes, of an object
+   * graph, to be carried out in slices bounded by a number of objects and a
+   * time budget (see {@link Exploration#run(long, long, TimeUnit)}).
+   *
+   * <p>Until the measurement is over, {@link Exploration#result()} returns
+   * the footprint of the part of the graph measured so far, which is a lower
+   * bound of the footprint of the whole graph. Once it is over, the result is
+   * the same as the one of {@link #measureBytes(Object)}.
+   *
+   * @param rootObject the root object that defines the object graph to be
+   * measured
+   * @return the measurement, not started yet
+   */
+  public static Exploration<Long> newMeasurement(Object rootObject) {
+    return newMeasurement(rootObject, Predicates.alwaysTrue());
+  }
+
+  /**
+   * Prepares the measurement of the memory footprint, in bytes, of an object
+   * graph, to be carried out in slices bounded by a number of objects and a
+   * time budget (see {@link Exploration#run(long, long, TimeUnit)}).
+   *
+   * <p>Until the measurement is over, {@link Exploration#result()} returns
+   * the footprint of the part of the graph measured so far, which is a lower
+   * bound of the footprint of the whole graph. Once it is over, the result is
+   * the same as the one of {@link #measureBytes(Object, Predicate)}.
+   *
+   * @param rootObject the root object that defines the object graph to be
+   * measured
+   * @param objectAcceptor a predicate that returns {@code true} for objects
+   * to be explored (and treated as part of the object graph), or
+   * {@code false} to forbid the traversal to traverse the given object
+   * @return the measurement, not started yet
+   */
+  public static Exploration<Long> newMeasurement(Object rootObject,
+      Predicate<Object> objectAcceptor) {
+    Preconditions.checkNotNull(objectAcceptor, "predicate");
+
+    // not memoizing, as measuring a registered graph the first time would not fit in a slice
+    return ObjectExplorer.newExploration(rootObject,
+        new MemoryMeasurerVisitor(defaultSizer(), completePredicate(objectAcceptor,
+            new ObjectExplorer.AtMostOnceEdgePredicate())),
+        EnumSet.noneOf(Feature.class));
+  }
+
+  /**
+   * Measures the memory footprint, in bytes, of an object graph, using
+   * several threads of the given pool. The result is the same as the one of
+   * {@link #measureBytes(Object)}.
+   *
+   * @param rootObject the root object that defines the object graph to be
+   * measured
+   * @param pool the pool that runs the measurement
+   * @return the memory footprint, in bytes, of the object graph
+   */
+  public static long measureBytes(Object rootObject, ForkJoinPool pool) {
+    return measureBytes(rootObject, Predicates.alwaysTrue(), pool);
+  }
+
+  /**
+   * Measures the memory footprint, in bytes, of an object graph, using
+   * several threads of the given pool. The result is the same as the one of
+   * {@link #measureBytes(Object, Predicate)}.
+   *
+   * @param rootObject the root object that defines the object graph to be
+   * measured
+   * @param objectAcceptor a thread-safe predicate that returns {@code true}
+   * for objects to be explored (and treated as part of the object graph), or
+   * {@code false} to forbid the traversal to traverse the given object
+   * @param pool the pool that runs the measurement
+   * @return the memory footprint, in bytes, of the object graph
+   */
+  public static long measureBytes(Object rootObject, Predicate<Object> objectAcceptor,
+      ForkJoinPool pool) {
+    Preconditions.checkNotNull(objectAcceptor, "predicate");
+
+    final ObjectSizer sizer = defaultSizer();
+    final Predicate<Edge> completePredicate = completePredicate(objectAcceptor,
+        new ObjectExplorer.ConcurrentAtMostOnceEdgePredicate());
+
+    return ObjectExplorer.exploreObjectInParallel(rootObject,
+        new Supplier<MemoryMeasurerVisitor>() {
+          public MemoryMeasurerVisitor get() {
+            return new MemoryMeasurerVisitor(sizer, completePredicate);
+          }
+        },
+        sum, EnumSet.noneOf(Feature.class), pool);
+  }
+
+  /**
+   * Measures the memory footprint, in bytes, of an object graph, as
+   * {@link #measureBytes(Object)} does, but separately for the objects that
+   * are strongly, softly and weakly reachable from the root object. Softly
+   * and weakly reachable objects (such as the values of caches built with
+   * soft or weak references) are the ones that the garbage collector may
+   * reclaim, and are counted once, with the strongest reachability they
+   * have.
+   *
+   * @param rootObject the root object that defines the object graph to be
+   * measured
+   * @return the memory footprint, in bytes, of the object graph, by
+   * reachability
+   */
+  public static BytesByReachability measureBytesByReachability(Object rootObject) {
+    return measureBytesByReachability(rootObject, Predicates.alwaysTrue());
+  }
+
+  /**
+   * Measures the memory footprint, in bytes, of an object graph, as
+   * {@link #measureBytes(Object, Predicate)} does, but separately for the
+   * objects that are strongly, softly and weakly reachable from the root
+   * object.
+   *
+   * @param rootObject the root object that defines the object graph to be
+   * measured
+   * @param objectAcceptor a predicate that returns {@code true} for objects
+   * to be explored (and treated as part of the object graph), or
+   * {@code false} to forbid the traversal to traverse the given object
+   * @return the memory footprint, in bytes, of the object graph, by
+   * reachability
+   * @see #measureBytesByReachability(Object)
+   */
+  public static BytesByReachability measureBytesByReachability(Object rootObject,
+      Predicate<Object> objectAcceptor) {
+    Preconditions.checkNotNull(objectAcceptor, "predicate");
+
+    return ObjectExplorer.exploreObject(rootObject,
+        new ReachabilityVisitor(defaultSizer(), completePredicate(objectAcceptor,
+            new ObjectExplorer.AtMostOnceEdgePredicate())),
+        EnumSet.of(Feature.TRACK_REACHABILITY));
+  }
+
+  /**
+   * Measures the memory footprint of an object graph, as
+   * {@link #measureBytes(Object)} does, but per class: for each class, the
+   * number of its instances in the graph and their size, in bytes. The
+   * histogram is built during the same traversal, and its total is what
+   * {@link #measureBytes(Object)} returns.
+   *
+   * @param rootObject the root object that defines the object graph to be
+   * measured
+   * @return the histogram of the classes of the object graph
+   */
+  public static ClassHistogram measureHistogram(Object rootObject) {
+    return measureHistogram(rootObject, Predicates.alwaysTrue());
+  }
+
+  /**
+   * Measures the memory footprint of an object graph, as
+   * {@link #measureBytes(Object, Predicate)} does, but per class.
+   *
+   * @param rootObject the root object that defines the object graph to be
+   * measured
+   * @param objectAcceptor a predicate that returns {@code true} for objects
+   * to be explored (and treated as part of the object graph), or
+   * {@code false} to forbid the traversal to traverse the given object
+   * @return the histogram of the classes of the object graph
+   * @see #measureHistogram(Object)
+   */
+  public static ClassHistogram measureHistogram(Object rootObject,
+      Predicate<Object> objectAcceptor) {
+    Preconditions.checkNotNull(objectAcceptor, "predicate");
 
     return ObjectExplorer.exploreObject(rootObject,
-        new MemoryMeasurerVisitor(completePredicate));
+        new HistogramVisitor(defaultSizer(), completePredicate(objectAcceptor,
+            new ObjectExplorer.AtMostOnceEdgePredicate())));
+  }
+
+  /**
+   * Measures the retained size of each object of an object graph: the
+   * memory, in bytes, that would be freed if the object went away, which
+   * includes the objects that are only reachable through it. Objects shared
+   * by several parts of the graph are retained by whatever dominates all of
+   * them, rather than by whichever part happens to reach them first. The
+   * object graph is defined as in {@link #measureBytes(Object)}, and its size
+   * is the retained size of the root object.
+   *
+   * <p>The whole graph is recorded (as compactly as possible) before the
+   * dominator tree is computed, so this takes memory proportional to the
+   * number of objects and references of the graph.
+   *
+   * @param rootObject the root object that defines the object graph to be
+   * measured
+   * @return the dominator tree of the object graph, with retained sizes
+   */
+  public static DominatorTree measureRetainedSizes(Object rootObject) {
+    return measureRetainedSizes(rootObject, Predicates.alwaysTrue());
   }
 
-  private static class MemoryMeasurerVisitor implements ObjectVisitor<Long> {
+  /**
+   * Measures the retained size of each object of an object graph, as
+   * {@link #measureRetainedSizes(Object)} does, excluding any object for
+   * which the user-provided predicate returns {@code false}.
+   *
+   * @param rootObject the root object that defines the object graph to be
+   * measured
+   * @param objectAcceptor a predicate that returns {@code true} for objects
+   * to be explored (and treated as part of the object graph), or
+   * {@code false} to forbid the traversal to traverse the given object
+   * @return the dominator tree of the object graph, with retained sizes
+   */
+  public static DominatorTree measureRetainedSizes(Object rootObject,
+      Predicate<Object> objectAcceptor) {
+    Preconditions.checkNotNull(objectAcceptor, "predicate");
+
+    return ObjectExplorer.exploreObject(rootObject,
+        new DominatorTreeVisitor(defaultSizer(), new MeasurementPredicate(objectAcceptor, null)));
+  }
+
+  /**
+   * Returns a visitor that measures the memory footprint, in bytes, of an
+   * object graph, as {@link #measureBytes(Object, Predicate)} does, to be run
+   * along with other visitors by a {@link CompositeVisitor}. Null values are
+   * ignored, so the exploration may visit them.
+   *
+   * @param objectAcceptor a predicate that returns {@code true} for objects
+   * to be explored (and treated as part of the object graph), or
+   * {@code false} to forbid the traversal to traverse the given object
+   * @param atMostOnce the predicate that tells whether an object is visited
+   * for the first time, such as {@link CompositeVisitor#atMostOnce()}
+   * @return a visitor whose result is the memory footprint, in bytes, of the
+   * object graph
+   */
+  public static EdgeVisitor<Long> newBytesVisitor(Predicate<Object> objectAcceptor,
+      Predicate<Edge> atMostOnce) {
+    Preconditions.checkNotNull(objectAcceptor, "predicate");
+    Preconditions.checkNotNull(atMostOnce, "atMostOnce");
+
+    return new MemoryMeasurerVisitor(defaultSizer(),
+        completePredicate(objectAcceptor, atMostOnce));
+  }
+
+  /**
+   * Returns a visitor that measures the number and size of the instances of
+   * each class of an object graph, as {@link #measureHistogram(Object,
+   * Predicate)} does, to be run along with other visitors by a
+   * {@link CompositeVisitor}. Null values are ignored, so the exploration may
+   * visit them.
+   *
+   * @param objectAcceptor a predicate that returns {@code true} for objects
+   * to be explored (and treated as part of the object graph), or
+   * {@code false} to forbid the traversal to traverse the given object
+   * @param atMostOnce the predicate that tells whether an object is visited
+   * for the first time, such as {@link CompositeVisitor#atMostOnce()}
+   * @return a visitor whose result is the histogram of the object graph
+   */
+  public static EdgeVisitor<ClassHistogram> newHistogramVisitor(
+      Predicate<Object> objectAcceptor, Predicate<Edge> atMostOnce) {
+    Preconditions.checkNotNull(objectAcceptor, "predicate");
+    Preconditions.checkNotNull(atMostOnce, "atMostOnce");
+
+    return new HistogramVisitor(defaultSizer(), completePredicate(objectAcceptor, atMostOnce));
+  }
+
+  /**
+   * The memory footprint of an object graph, split by how strongly objects
+   * are reachable from the root object.
+   *
+   * @see MemoryMeasurer#measureBytesByReachability(Object)
+   */
+  public static class BytesByReachability {
+    private final long strong;
+    private final long soft;
+    private final long weak;
+
+    BytesByReachability(long strong, long soft, long weak) {
+      this.strong = strong;
+      this.soft = soft;
+      this.weak = weak;
+    }
+
+    /**
+     * Returns the number of bytes of the objects that are reachable without
+     * going through any {@code Reference}.
+     */
+    public long getStronglyReachable() {
+      return strong;
+    }
+
+    /**
+     * Returns the number of bytes of the objects that are only reachable
+     * through soft references.
+     */
+    public long getSoftlyReachable() {
+      return soft;
+    }
+
+    /**
+     * Returns the number of bytes of the objects that are only reachable
+     * through weak (or phantom) references.
+     */
+    public long getWeaklyReachable() {
+      return weak;
+    }
+
+    /**
+     * Returns the number of bytes of the whole object graph, which is the
+     * result of {@link MemoryMeasurer#measureBytes(Object)}.
+     */
+    public long getTotal() {
+      return strong + soft + weak;
+    }
+
+    @Override
+    public String toString() {
+      return Objects.toStringHelper(this)
+      .add("Strong", strong)
+      .add("Soft", soft)
+      .add("Weak", weak)
+      .toString();
+    }
+  }
+
+  private static Predicate<Edge> completePredicate(Predicate<Object> objectAcceptor,
+      Predicate<Edge> atMostOncePredicate) {
+    return new MeasurementPredicate(objectAcceptor, atMostOncePredicate);
+  }
+
+  private static final Merger<Long> sum = new Merger<Long>() {
+    public Long merge(Long first, Long second) {
+      return first + second;
+    }
+  };
+
+  /*
+   * Registered graphs are measured (and cached) without any predicate, so
+   * their cached sizes only stand for measurements that accept every object.
+   */
+  private static boolean memoizes(Predicate<Object> objectAcceptor) {
+    return objectAcceptor == Predicates.alwaysTrue();
+  }
+
+  private static MemoryMeasurerVisitor memoizingVisitor(ObjectSizer sizer,
+      Predicate<Object> objectAcceptor) {
+    ObjectExplorer.AtMostOnceEdgePredicate atMostOnce =
+        new ObjectExplorer.AtMostOnceEdgePredicate();
+    return new MemoryMeasurerVisitor(sizer, completePredicate(objectAcceptor, atMostOnce),
+        memoizes(objectAcceptor) ? atMostOnce : null);
+  }
+
+  /**
+   * Sums the sizes of the accepted objects. If given the at-most-once
+   * predicate of the exploration, it charges the graphs of
+   * {@link ImmutableGraphs registered} objects at once, rather than
+   * exploring them.
+   */
+  private static class MemoryMeasurerVisitor implements EdgeVisitor<Long> {
     private long memory;
-    private final Predicate<Chain> predicate;
+    private final ObjectSizer sizer;
+    private final Predicate<Edge> predicate;
+    @Nullable private final ObjectExplorer.AtMostOnceEdgePredicate atMostOnce;
 
-    MemoryMeasurerVisitor(Predicate<Chain> predicate) {
+    MemoryMeasurerVisitor(ObjectSizer sizer, Predicate<Edge> predicate) {
+      this(sizer, predicate, null);
+    }
+
+    MemoryMeasurerVisitor(ObjectSizer sizer, Predicate<Edge> predicate,
+        @Nullable ObjectExplorer.AtMostOnceEdgePredicate atMostOnce) {
+      this.sizer = sizer;
       this.predicate = predicate;
+      this.atMostOnce = atMostOnce;
     }
 
-    public Traversal visit(Chain chain) {
-      if (predicate.apply(chain)) {
-        Object o = chain.getValue();
-        memory += instrumentation.getObjectSize(o);
-        if (Enum.class.isAssignableFrom(o.getClass())) {
-          memory -= costOfBareEnumConstant;
+    public Traversal visit(Edge edge) {
+      if (predicate.apply(edge) && edge.getValue() != null) {
+        Object o = edge.getValue();
+        memory += sizer.sizeOf(o);
+        if (atMostOnce != null && ImmutableGraphs.isRegistered(o)) {
+          memory += sizer.subgraphOf(o).charge(atMostOnce);
+          return Traversal.SKIP;
         }
         return Traversal.EXPLORE;
       }
@@ -124,4 +1002,348 @@ public class MemoryMeasurer {
       return memory;
     }
   }
+
+  private static class ReachabilityVisitor implements EdgeVisitor<BytesByReachability> {
+    private final long[] memory = new long[Reachability.values().length];
+    private final ObjectSizer sizer;
+    private final Predicate<Edge> predicate;
+
+    ReachabilityVisitor(ObjectSizer sizer, Predicate<Edge> predicate) {
+      this.sizer = sizer;
+      this.predicate = predicate;
+    }
+
+    public Traversal visit(Edge edge) {
+      if (predicate.apply(edge)) {
+        memory[edge.getReachability().ordinal()] += sizer.sizeOf(edge.getValue());
+        return Traversal.EXPLORE;
+      }
+      return Traversal.SKIP;
+    }
+
+    public BytesByReachability result() {
+      return new BytesByReachability(memory[Reachability.STRONG.ordinal()],
+          memory[Reachability.SOFT.ordinal()],
+          memory[Reachability.WEAK.ordinal()] + memory[Reachability.PHANTOM.ordinal()]);
+    }
+  }
+
+  private static class HistogramVisitor implements EdgeVisitor<ClassHistogram> {
+    private final ClassHistogram histogram = new ClassHistogram();
+    private final ObjectSizer sizer;
+    private final Predicate<Edge> predicate;
+
+    HistogramVisitor(ObjectSizer sizer, Predicate<Edge> predicate) {
+      this.sizer = sizer;
+      this.predicate = predicate;
+    }
+
+    public Traversal visit(Edge edge) {
+      if (predicate.apply(edge) && edge.getValue() != null) {
+        Object o = edge.getValue();
+        histogram.add(o.getClass(), sizer.sizeOf(o));
+        return Traversal.EXPLORE;
+      }
+      return Traversal.SKIP;
+    }
+
+    public ClassHistogram result() {
+      return histogram;
+    }
+  }
+
+  /**
+   * Records every object and every reference between accepted objects,
+   * exploring each object once.
+   */
+  private static class DominatorTreeVisitor implements EdgeVisitor<DominatorTree> {
+    private final DominatorTree.Builder builder = new DominatorTree.Builder();
+    private final ObjectSizer sizer;
+    private final Predicate<Edge> predicate;
+
+    DominatorTreeVisitor(ObjectSizer sizer, Predicate<Edge> predicate) {
+      this.sizer = sizer;
+      this.predicate = predicate;
+    }
+
+    public Traversal visit(Edge edge) {
+      if (!predicate.apply(edge)) return Traversal.SKIP;
+      Object o = edge.getValue();
+      int number = builder.numberOf(o);
+      boolean firstVisit = number < 0;
+      if (firstVisit) {
+        number = builder.addObject(o, sizer.sizeOf(o));
+      }
+      if (!edge.isRoot()) {
+        builder.addReference(builder.numberOf(edge.getParent()), number);
+      }
+      return firstVisit ? Traversal.EXPLORE : Traversal.SKIP;
+    }
+
+    public DominatorTree result() {
+      return builder.build();
+    }
+  }
+
+  /**
+   * Records the union of the elements' object graphs, below an anonymous
+   * root that references an anonymous node per element, so that the objects
+   * dominated by an element's node are the ones exclusive to it.
+   */
+  private static class ElementsVisitor implements EdgeVisitor<Void> {
+    private static final int NONE = -1;
+
+    private final DominatorTree.Builder builder = new DominatorTree.Builder();
+    private final ObjectSizer sizer;
+    private final Predicate<Edge> predicate;
+    private final int root;
+    private int[] elementNodes = new int[16];
+    private int elements;
+    // by object number, the element that first reached it
+    private int[] owners = new int[16];
+
+    ElementsVisitor(ObjectSizer sizer, Predicate<Edge> predicate) {
+      this.sizer = sizer;
+      this.predicate = predicate;
+      this.root = builder.addAnonymous(0);
+    }
+
+    void startElement() {
+      int node = builder.addAnonymous(0);
+      builder.addReference(root, node);
+      if (elements == elementNodes.length) {
+        elementNodes = Arrays.copyOf(elementNodes, elements * 2);
+      }
+      elementNodes[elements++] = node;
+    }
+
+    public Traversal visit(Edge edge) {
+      if (!predicate.apply(edge)) return Traversal.SKIP;
+      Object o = edge.getValue();
+      int number = builder.numberOf(o);
+      boolean firstVisit = number < 0;
+      if (firstVisit) {
+        number = builder.addObject(o, sizer.sizeOf(o));
+        if (number >= owners.length) {
+          owners = Arrays.copyOf(owners, Math.max(owners.length * 2, number + 1));
+        }
+        owners[number] = elements - 1;
+      }
+      builder.addReference(edge.isRoot()
+          ? elementNodes[elements - 1] : builder.numberOf(edge.getParent()), number);
+      return firstVisit ? Traversal.EXPLORE : Traversal.SKIP;
+    }
+
+    public Void result() {
+      return null;
+    }
+
+    ElementBytes elementBytes() {
+      DominatorTree tree = builder.build();
+      long[] exclusiveBytes = new long[elements];
+      long[] sharedBytes = new long[elements];
+      // the element whose node dominates each object, if any
+      int[] dominatingElements = new int[tree.size()];
+      Arrays.fill(dominatingElements, NONE);
+      for (int element = 0; element < elements; element++) {
+        exclusiveBytes[element] = tree.retainedBytes(elementNodes[element]);
+        dominatingElements[elementNodes[element]] = element;
+      }
+      for (int number : tree.topDownOrder()) {
+        if (number == root || dominatingElements[number] != NONE) continue;
+        // objects right below the root are shared, as are the ones they dominate
+        int dominator = tree.dominator(number);
+        dominatingElements[number] = dominatingElements[dominator];
+        if (dominatingElements[number] == NONE) {
+          sharedBytes[owners[number]] += tree.shallowBytes(number);
+        }
+      }
+      return new ElementBytes(exclusiveBytes, sharedBytes);
+    }
+  }
+
+  /**
+   * Returns the agent-based sizer if the agent is there (or can be loaded),
+   * or else the one of the memory model of the running VM.
+   */
+  private static ObjectSizer defaultSizer() {
+    if (!InstrumentationGrabber.tryAttach()) return defaultModelSizer();
+    ObjectSizer sizer = instrumentationSizer;
+    if (sizer == null) {
+      instrumentationSizer = sizer =
+          new ObjectSizer(InstrumentationGrabber.instrumentation(), null);
+    }
+    return sizer;
+  }
+
+  private static ObjectSizer defaultModelSizer() {
+    ObjectSizer sizer = currentModelSizer;
+    if (sizer == null) {
+      currentModelSizer = sizer = new ObjectSizer(null, MemoryModel.current());
+    }
+    return sizer;
+  }
+
+  private static ObjectSizer sizerOf(MemoryModel model) {
+    return model == MemoryModel.current() ? defaultModelSizer() : new ObjectSizer(null, model);
+  }
+
+  /**
+   * Gives the size of objects, either through the instrumentation provided to
+   * the agent or by a memory model.
+   *
+   * <p>All instances of a (non-array) class have the same size, which is only
+   * asked for once per class, and then cached along with whether the class
+   * is an enum. The size of an array is computed from the layout of its class
+   * and its length, so the agent is only asked about arrays whose layout is
+   * unknown.
+   */
+  private static final class ObjectSizer {
+    private final Instrumentation instrumentation;
+    private final MemoryModel model;
+    private final ClassValue<ClassCost> costs = new ClassValue<ClassCost>() {
+      @Override
+      protected ClassCost computeValue(Class<?> type) {
+        return new ClassCost(type);
+      }
+    };
+    // soft values, as the objects of a graph may well reference its root
+    private final ConcurrentMap<Object, Subgraph> subgraphs =
+        new MapMaker().weakKeys().softValues().makeMap();
+
+    /*
+     * The bare minimum memory footprint of an enum value. This should be
+     * subtracted for any enum value encountered, since it is static in
+     * nature.
+     */
+    private final long costOfBareEnumConstant;
+
+    ObjectSizer(Instrumentation instrumentation, MemoryModel model) {
+      this.instrumentation = instrumentation;
+      this.model = model;
+      this.costOfBareEnumConstant = shallowSizeOf(DummyEnum.CONSTANT);
+    }
+
+    long sizeOf(Object o) {
+      Class<?> type = o.getClass();
+      ClassCost cost = costs.get(type);
+      long size = cost.size;
+      if (size == ClassCost.UNKNOWN) {
+        if (cost.variable) {
+          return type.isArray() ? sizeOfArray(o, type) : shallowSizeOf(o);
+        }
+        size = shallowSizeOf(o);
+        if (cost.isEnum) {
+          size -= costOfBareEnumConstant;
+        }
+        // benign race: every thread computes the same size
+        cost.size = size;
+      }
+      return size;
+    }
+
+    /**
+     * Returns the objects reachable from the given (registered) object, which
+     * are only explored the first time.
+     */
+    Subgraph subgraphOf(Object root) {
+      Subgraph subgraph = subgraphs.get(root);
+      if (subgraph == null) {
+        SubgraphVisitor visitor = new SubgraphVisitor(this, root);
+        ObjectExplorer.exploreObject(root, visitor);
+        subgraph = visitor.result();
+        subgraphs.put(root, subgraph);
+      }
+      return subgraph;
+    }
+
+    private long sizeOfArray(Object array, Class<?> type) {
+      if (instrumentation == null) {
+        return model.sizeOfArray(type, Array.getLength(array));
+      } else if (ClassLayout.of(type).arrayBaseOffset() >= 0) {
+        // the layout of the running VM, which is what the agent would report
+        return MemoryModel.current().sizeOfArray(type, Array.getLength(array));
+      } else {
+        return instrumentation.getObjectSize(array);
+      }
+    }
+
+    private long shallowSizeOf(Object o) {
+      return instrumentation != null
+          ? instrumentation.getObjectSize(o) : model.shallowSizeOf(o);
+    }
+  }
+
+  /**
+   * The objects reachable from a registered object (but itself), along with
+   * their sizes.
+   */
+  private static final class Subgraph {
+    private final Object[] objects;
+    private final long[] bytes;
+
+    Subgraph(Object[] objects, long[] bytes) {
+      this.objects = objects;
+      this.bytes = bytes;
+    }
+
+    /**
+     * Returns the total size of the objects that the given predicate has not
+     * seen yet, and marks them as seen.
+     */
+    long charge(ObjectExplorer.AtMostOnceEdgePredicate atMostOnce) {
+      long total = 0;
+      for (int i = 0; i < objects.length; i++) {
+        if (atMostOnce.firstVisit(objects[i])) {
+          total += bytes[i];
+        }
+      }
+      return total;
+    }
+  }
+
+  private static class SubgraphVisitor implements EdgeVisitor<Subgraph> {
+    private final ObjectSizer sizer;
+    private final Object root;
+    private final Predicate<Edge> predicate = completePredicate(Predicates.alwaysTrue(),
+        new ObjectExplorer.AtMostOnceEdgePredicate());
+    private final List<Object> objects = Lists.newArrayList();
+    private long[] bytes = new long[16];
+
+    SubgraphVisitor(ObjectSizer sizer, Object root) {
+      this.sizer = sizer;
+      this.root = root;
+    }
+
+    public Traversal visit(Edge edge) {
+      if (!predicate.apply(edge)) return Traversal.SKIP;
+      Object o = edge.getValue();
+      if (o != root) {
+        if (objects.size() == bytes.length) {
+          bytes = Arrays.copyOf(bytes, bytes.length * 2);
+        }
+        bytes[objects.size()] = sizer.sizeOf(o);
+        objects.add(o);
+      }
+      return Traversal.EXPLORE;
+    }
+
+    public Subgraph result() {
+      return new Subgraph(objects.toArray(), Arrays.copyOf(bytes, objects.size()));
+    }
+  }
+
+  private static final class ClassCost {
+    static final long UNKNOWN = -1;
+
+    // whether the size depends on the instance (arrays, and classes with their statics)
+    final boolean variable;
+    final boolean isEnum;
+    volatile long size = UNKNOWN;
+
+    ClassCost(Class<?> type) {
+      this.variable = type.isArray() || type == Class.class;
+      this.isEnum = Enum.class.isAssignableFrom(type);
+    }
+  }
 }
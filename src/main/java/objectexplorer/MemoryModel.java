@@ -0,0 +1,344 @@
+/*******************************************************************************
+ * BEGIN COPYRIGHT NOTICE
+ * 
+ * Copyright [2011] [Rodrigo Lemos]
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * END COPYRIGHT NOTICE
+ ******************************************************************************/
+package objectexplorer;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+
+import sun.misc.Unsafe;
+
+import objectexplorer.ObjectGraphMeasurer.Footprint;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+/**
+ * A model of how objects are laid out in memory, which gives the shallow
+ * size of an object from the types of its fields (or the length of an
+ * array), without the help of an agent.
+ *
+ * <p>The model of the running Java VM ({@link #current()}) is detected once,
+ * and then relies on the actual field offsets and array layouts of the VM,
+ * as cached for each class. Other models (for example, of a VM with
+ * different settings) estimate sizes from their parameters alone, assuming
+ * that fields are packed with no gaps.
+ *
+ * @see MemoryMeasurer#measureBytes(Object, MemoryModel)
+ */
+public final class MemoryModel {
+  private static final MemoryModel current = detect();
+
+  private final int objectHeaderSize;
+  private final int arrayHeaderSize;
+  private final int referenceSize;
+  private final int objectAlignment;
+  // whether this is the model of the running VM, whose layouts can be looked up
+  private final boolean detected;
+
+  /**
+   * Constructs a memory model.
+   *
+   * @param objectHeaderSize the size of the header of an object, in bytes
+   * @param arrayHeaderSize the size of the header of an array (including its
+   * length), in bytes
+   * @param referenceSize the size of a reference, in bytes
+   * @param objectAlignment the alignment of objects (a power of two), in
+   * bytes
+   */
+  public MemoryModel(int objectHeaderSize, int arrayHeaderSize, int referenceSize,
+      int objectAlignment) {
+    this(objectHeaderSize, arrayHeaderSize, referenceSize, objectAlignment, false);
+  }
+
+  private MemoryModel(int objectHeaderSize, int arrayHeaderSize, int referenceSize,
+      int objectAlignment, boolean detected) {
+    Preconditions.checkArgument(objectHeaderSize > 0, "Non-positive object header size");
+    Preconditions.checkArgument(arrayHeaderSize > 0, "Non-positive array header size");
+    Preconditions.checkArgument(referenceSize > 0, "Non-positive reference size");
+    Preconditions.checkArgument(Integer.bitCount(objectAlignment) == 1,
+        "Object alignment is not a power of two");
+    this.objectHeaderSize = objectHeaderSize;
+    this.arrayHeaderSize = arrayHeaderSize;
+    this.referenceSize = referenceSize;
+    this.objectAlignment = objectAlignment;
+    this.detected = detected;
+  }
+
+  /**
+   * How HotSpot lays out the header of objects on a 64-bit VM.
+   */
+  public enum ObjectHeaders {
+    /**
+     * An 8-byte mark word and an 8-byte class pointer
+     * ({@code -XX:-UseCompressedClassPointers}).
+     */
+    UNCOMPRESSED_CLASS_POINTERS(16, 20),
+
+    /**
+     * An 8-byte mark word and a 4-byte class pointer (the default).
+     */
+    COMPRESSED_CLASS_POINTERS(12, 16),
+
+    /**
+     * A single 8-byte word holding both ({@code -XX:+UseCompactObjectHeaders}).
+     */
+    COMPACT(8, 12);
+
+    final int objectHeaderSize;
+    final int arrayHeaderSize;
+
+    private ObjectHeaders(int objectHeaderSize, int arrayHeaderSize) {
+      this.objectHeaderSize = objectHeaderSize;
+      this.arrayHeaderSize = arrayHeaderSize;
+    }
+  }
+
+  /**
+   * Returns the model of a 32-bit HotSpot VM.
+   *
+   * @param objectAlignment the alignment of objects (a power of two), in
+   * bytes
+   */
+  public static MemoryModel hotSpot32Bit(int objectAlignment) {
+    return new MemoryModel(8, 12, 4, objectAlignment);
+  }
+
+  /**
+   * Returns the model of a 64-bit HotSpot VM with the given settings.
+   * References are compressed by default for heaps under 32GB (times the
+   * object alignment over 8).
+   *
+   * @param compressedOops whether references are compressed to 4 bytes
+   * ({@code -XX:+UseCompressedOops})
+   * @param headers the layout of object headers
+   * @param objectAlignment the alignment of objects (a power of two), in
+   * bytes ({@code -XX:ObjectAlignmentInBytes})
+   */
+  public static MemoryModel hotSpot64Bit(boolean compressedOops, ObjectHeaders headers,
+      int objectAlignment) {
+    Preconditions.checkNotNull(headers, "headers");
+    return new MemoryModel(headers.objectHeaderSize, headers.arrayHeaderSize,
+        compressedOops ? 4 : 8, objectAlignment);
+  }
+
+  /**
+   * Returns the model of the running Java VM.
+   */
+  public static MemoryModel current() {
+    return current;
+  }
+
+  /**
+   * Returns the size of the header of an object, in bytes.
+   */
+  public int getObjectHeaderSize() {
+    return objectHeaderSize;
+  }
+
+  /**
+   * Returns the size of the header of an array (including its length), in
+   * bytes.
+   */
+  public int getArrayHeaderSize() {
+    return arrayHeaderSize;
+  }
+
+  /**
+   * Returns the size of a reference, in bytes.
+   */
+  public int getReferenceSize() {
+    return referenceSize;
+  }
+
+  /**
+   * Returns the alignment of objects, in bytes.
+   */
+  public int getObjectAlignment() {
+    return objectAlignment;
+  }
+
+  /**
+   * Returns the shallow size of the given object, in bytes, i.e. the memory
+   * taken by the object itself, not counting the objects it references.
+   */
+  public long shallowSizeOf(Object object) {
+    Class<?> type = object.getClass();
+    if (type.isArray()) {
+      return sizeOfArray(type, Array.getLength(object));
+    }
+    return sizeOfInstance(type);
+  }
+
+  /**
+   * Returns the size, in bytes, of an instance of the given (non-array)
+   * class.
+   */
+  public long sizeOfInstance(Class<?> type) {
+    Preconditions.checkArgument(!type.isArray(), "Array class: %s", type);
+    ClassLayout layout = ClassLayout.of(type);
+    if (detected) {
+      long size = layout.instanceSize();
+      if (size >= 0) return size;
+    }
+
+    long size = objectHeaderSize;
+    size += (long) layout.referenceFields().length * referenceSize;
+    for (Field field : layout.primitiveFields()) {
+      size += sizeOfPrimitive(field.getType());
+    }
+    return align(size);
+  }
+
+  /**
+   * Returns the size, in bytes, of an array of the given class and length.
+   */
+  public long sizeOfArray(Class<?> arrayType, int length) {
+    Preconditions.checkArgument(arrayType.isArray(), "Not an array class: %s", arrayType);
+    Preconditions.checkArgument(length >= 0, "Negative length");
+    if (detected) {
+      ClassLayout layout = ClassLayout.of(arrayType);
+      if (layout.arrayBaseOffset() >= 0) {
+        return align(layout.arrayBaseOffset() + (long) length * layout.arrayIndexScale());
+      }
+    }
+
+    Class<?> componentType = arrayType.getComponentType();
+    int elementSize = componentType.isPrimitive()
+        ? sizeOfPrimitive(componentType) : referenceSize;
+    // elements are aligned to their own size
+    long base = (arrayHeaderSize + elementSize - 1) / elementSize * elementSize;
+    return align(base + (long) length * elementSize);
+  }
+
+  /**
+   * Projects the number of bytes that an object graph of the given footprint
+   * would take under this model, which tells how a graph measured in one VM
+   * would fare in a VM with different settings.
+   *
+   * <p>Headers, references and primitives are counted exactly (for
+   * footprints that count their arrays), but since a footprint does not tell
+   * the size of each object, the alignment padding is estimated as half of
+   * what it can be at most, assuming that the sizes of objects (multiples of
+   * 4 bytes, mostly) are evenly spread between alignments. The padding
+   * between the fields of an object is not taken into account.
+   *
+   * @param footprint the footprint of an object graph, as measured by
+   * {@link ObjectGraphMeasurer}
+   * @return the projected number of bytes of the object graph
+   */
+  public long projectBytes(Footprint footprint) {
+    long objects = footprint.getObjectCount();
+    long arrays = footprint.getArrayCount();
+    long bytes = (objects - arrays) * objectHeaderSize + arrays * arrayHeaderSize
+        + footprint.getReferenceCount() * referenceSize + footprint.getPrimitiveBytes();
+    return bytes + objects * Math.max(objectAlignment - 4, 0) / 2;
+  }
+
+  /**
+   * Rounds the given size up to the object alignment.
+   */
+  long align(long size) {
+    return (size + objectAlignment - 1) & -objectAlignment;
+  }
+
+  /**
+   * Returns the size of a value of the given primitive type, in bytes.
+   */
+  static int sizeOfPrimitive(Class<?> type) {
+    if (type == long.class || type == double.class) {
+      return 8;
+    } else if (type == int.class || type == float.class) {
+      return 4;
+    } else if (type == char.class || type == short.class) {
+      return 2;
+    } else {
+      return 1;
+    }
+  }
+
+  /**
+   * Returns the size of an instance of a class with the given fields, as laid
+   * out by the running VM, or {@code -1} if it cannot be told.
+   */
+  static long instanceSizeOf(Iterable<Field> fields) {
+    Unsafe unsafe = FieldAccessor.unsafe();
+    if (unsafe == null) return -1;
+    long end = current.objectHeaderSize;
+    try {
+      for (Field field : fields) {
+        Class<?> type = field.getType();
+        int size = type.isPrimitive() ? sizeOfPrimitive(type) : current.referenceSize;
+        end = Math.max(end, unsafe.objectFieldOffset(field) + size);
+      }
+    } catch (RuntimeException e) {
+      return -1;
+    }
+    return current.align(end);
+  }
+
+  private static MemoryModel detect() {
+    int objectAlignment = detectObjectAlignment();
+    Unsafe unsafe = FieldAccessor.unsafe();
+    if (unsafe != null) {
+      try {
+        // a class with a single byte field, which goes right after the header
+        int objectHeaderSize = (int) unsafe.objectFieldOffset(
+            HeaderProbe.class.getDeclaredField("field"));
+        return new MemoryModel(objectHeaderSize, unsafe.arrayBaseOffset(byte[].class),
+            unsafe.arrayIndexScale(Object[].class), objectAlignment, true);
+      } catch (Exception e) {
+        // fall back to the usual layout
+      }
+    }
+    if ("32".equals(System.getProperty("sun.arch.data.model"))) {
+      return new MemoryModel(8, 12, 4, objectAlignment);
+    }
+    // assumes compressed references, which is the default for heaps under 32GB
+    return new MemoryModel(12, 16, 4, objectAlignment);
+  }
+
+  private static int detectObjectAlignment() {
+    try {
+      HotSpotDiagnosticMXBean hotSpot =
+          ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+      return Integer.parseInt(hotSpot.getVMOption("ObjectAlignmentInBytes").getValue());
+    } catch (Throwable t) {
+      // not a HotSpot VM (or no management), so stick to the most common value
+      return 8;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+    .add("ObjectHeaderSize", objectHeaderSize)
+    .add("ArrayHeaderSize", arrayHeaderSize)
+    .add("ReferenceSize", referenceSize)
+    .add("ObjectAlignment", objectAlignment)
+    .toString();
+  }
+
+  @SuppressWarnings("unused")
+  private static final class HeaderProbe {
+    byte field;
+  }
+}
@@ -20,34 +20,41 @@
  ******************************************************************************/
 package objectexplorer;
 
-import java.lang.reflect.AccessibleObject;
-import java.lang.reflect.Array;
 import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
-import java.util.Arrays;
 import java.util.EnumSet;
-import java.util.IdentityHashMap;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
-
-import javax.annotation.Nonnull;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
 import objectexplorer.ObjectVisitor.Traversal;
 
-import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
-import com.google.common.collect.Lists;
+import com.google.common.base.Supplier;
 
 /**
- * A depth-first object graph explorer. The traversal starts at a root (an
+ * An object graph explorer. The traversal starts at a root (an
  * {@code Object}) and explores any other reachable object (recursively) or
  * primitive value, excluding static fields from the traversal. The traversal
  * is controlled by a user-supplied {@link ObjectVisitor}, which decides for
  * each explored path whether to continue exploration of that path, and it can
  * also return a value at the end of the traversal.
+ *
+ * <p>Visitors that do not need the whole path leading to each value should
+ * implement {@link EdgeVisitor} instead, which spares the traversal from
+ * creating a {@link Chain} for every explored value.
+ *
+ * <p>The traversal is depth-first, unless {@link Feature#BREADTH_FIRST} is
+ * requested, and may be limited to a maximum depth (the number of references
+ * followed from the root object); values beyond that depth are never even
+ * read.
  */
 public class ObjectExplorer {
+  /**
+   * The maximum depth that means that the whole object graph is to be
+   * explored.
+   */
+  public static final int UNLIMITED_DEPTH = Integer.MAX_VALUE;
+
   private ObjectExplorer() { }
 
   /**
@@ -81,9 +88,15 @@ public class ObjectExplorer {
    * In particular:
    * <ul>
    * <li>If {@link Feature#VISIT_PRIMITIVES} is contained in features,
-   * the visitor will also be notified about exploration of primitive values.
+   * the visitor will also be notified about exploration of primitive values
+   * (in bulk, if it is a {@link PrimitiveVisitor}).
    * <li>If {@link Feature#VISIT_NULL} is contained in features, the visitor
    * will also be notified about exploration of {@code null} values.
+   * <li>If {@link Feature#BREADTH_FIRST} is contained in features, values
+   * are explored in breadth-first order instead of depth-first order.
+   * <li>If {@link Feature#TRACK_REACHABILITY} is contained in features, the
+   * referents of weaker references are explored after everything that is
+   * more strongly reachable.
    * </ul>
    * In both cases above, the return value of
    * {@link ObjectVisitor#visit(Chain)} is ignored, since neither primitive
@@ -101,100 +114,426 @@ public class ObjectExplorer {
    */
   public static <T> T exploreObject(Object rootObject,
       ObjectVisitor<T> visitor, EnumSet<Feature> features) {
-    LinkedList<Chain> stack = new LinkedList<Chain>();
-    if (rootObject != null) stack.addFirst(Chain.root(rootObject));
-
-    while (!stack.isEmpty()) {
-      Chain chain = stack.removeFirst();
-      //the only place where the return value of visit() is considered
-      Traversal traversal = visitor.visit(chain);
-      switch (traversal) {
-        case SKIP: continue;
-        case EXPLORE: break;
-      }
+    return exploreObject(rootObject, visitor, features, UNLIMITED_DEPTH);
+  }
+
+  /**
+   * Explores an object graph, as
+   * {@link #exploreObject(Object, ObjectVisitor, EnumSet)} does, but only up
+   * to the given depth: values that are {@code maxDepth} references away
+   * from the root object are visited, but not explored any further, so a
+   * depth of {@code 0} only visits the root object and a depth of {@code 1}
+   * also its fields (or elements).
+   *
+   * <p>Visitors that only visit each object once should be combined with
+   * {@link Feature#BREADTH_FIRST}, which reaches every object through one of
+   * its shortest paths from the root object. In depth-first order, an object
+   * may be first reached through a longer path, close to the depth limit,
+   * and be left unexplored.
+   *
+   * @param <T> the type of the value obtained (after the traversal) by the
+   * ObjectVisitor
+   * @param rootObject an object to be recursively explored
+   * @param visitor a visitor that is notified for each explored path
+   * and decides whether to continue exploration of that path, and constructs
+   * a return value at the end of the exploration
+   * @param features a set of desired features that the object exploration should have
+   * @param maxDepth the maximum depth of the explored values, or
+   * {@link #UNLIMITED_DEPTH}
+   * @return whatever value is returned by the visitor at the end of the traversal
+   * @throws IllegalArgumentException if {@code maxDepth} is negative
+   * @see ObjectVisitor
+   */
+  public static <T> T exploreObject(Object rootObject,
+      ObjectVisitor<T> visitor, EnumSet<Feature> features, int maxDepth) {
+    return newExploration(rootObject, visitor, features, maxDepth).complete();
+  }
+
+  /**
+   * Explores an object graph (defined by a root object and whatever is
+   * reachable through it, following non-static fields) while using an
+   * {@link EdgeVisitor} to both control the traversal and return a value.
+   *
+   * <p>Equivalent to {@code exploreObject(rootObject, visitor,
+   * EnumSet.noneOf(Feature.class))}.
+   *
+   * @param <T> the type of the value obtained (after the traversal) by the
+   * EdgeVisitor
+   * @param rootObject an object to be recursively explored
+   * @param visitor a visitor that is notified for each explored edge and
+   * decides whether to continue exploration of that edge, and constructs a
+   * return value at the end of the exploration
+   * @return whatever value is returned by the visitor at the end of the
+   * traversal
+   * @see EdgeVisitor
+   */
+  public static <T> T exploreObject(Object rootObject, EdgeVisitor<T> visitor) {
+    return exploreObject(rootObject, visitor, EnumSet.noneOf(Feature.class));
+  }
+
+  /**
+   * Explores an object graph (defined by a root object and whatever is
+   * reachable through it, following non-static fields) while using an
+   * {@link EdgeVisitor} to both control the traversal and return a value.
+   *
+   * <p>This behaves exactly as
+   * {@link #exploreObject(Object, ObjectVisitor, EnumSet)}, except that no
+   * {@link Chain} is created during the traversal: the visitor only learns
+   * about the last step leading to each value.
+   *
+   * @param <T> the type of the value obtained (after the traversal) by the
+   * EdgeVisitor
+   * @param rootObject an object to be recursively explored
+   * @param visitor a visitor that is notified for each explored edge
+   * and decides whether to continue exploration of that edge, and constructs
+   * a return value at the end of the exploration
+   * @param features a set of desired features that the object exploration should have
+   * @return whatever value is returned by the visitor at the end of the traversal
+   * @see EdgeVisitor
+   */
+  public static <T> T exploreObject(Object rootObject,
+      EdgeVisitor<T> visitor, EnumSet<Feature> features) {
+    return exploreObject(rootObject, visitor, features, UNLIMITED_DEPTH);
+  }
+
+  /**
+   * Explores an object graph, as
+   * {@link #exploreObject(Object, EdgeVisitor, EnumSet)} does, but only up
+   * to the given depth, as
+   * {@link #exploreObject(Object, ObjectVisitor, EnumSet, int)} does. The
+   * depth of each visited value is given by {@link Edge#getDepth()}.
+   *
+   * @param <T> the type of the value obtained (after the traversal) by the
+   * EdgeVisitor
+   * @param rootObject an object to be recursively explored
+   * @param visitor a visitor that is notified for each explored edge
+   * and decides whether to continue exploration of that edge, and constructs
+   * a return value at the end of the exploration
+   * @param features a set of desired features that the object exploration should have
+   * @param maxDepth the maximum depth of the explored values, or
+   * {@link #UNLIMITED_DEPTH}
+   * @return whatever value is returned by the visitor at the end of the traversal
+   * @throws IllegalArgumentException if {@code maxDepth} is negative
+   * @see EdgeVisitor
+   */
+  public static <T> T exploreObject(Object rootObject,
+      EdgeVisitor<T> visitor, EnumSet<Feature> features, int maxDepth) {
+    return newExploration(rootObject, visitor, features, maxDepth).complete();
+  }
+
+  /**
+   * Prepares the exploration of an object graph (defined by a root object
+   * and whatever is reachable through it, following non-static fields),
+   * which is then carried out in budgeted slices by calling
+   * {@link Exploration#run(long, long, TimeUnit)}.
+   *
+   * <p>Run to completion, the exploration behaves exactly as
+   * {@link #exploreObject(Object, ObjectVisitor, EnumSet)}.
+   *
+   * @param <T> the type of the value obtained (after the traversal) by the
+   * ObjectVisitor
+   * @param rootObject an object to be recursively explored
+   * @param visitor a visitor that is notified for each explored path
+   * and decides whether to continue exploration of that path, and constructs
+   * a return value at the end of the exploration
+   * @param features a set of desired features that the object exploration should have
+   * @return the exploration, not started yet
+   */
+  public static <T> Exploration<T> newExploration(Object rootObject,
+      ObjectVisitor<T> visitor, EnumSet<Feature> features) {
+    return newExploration(rootObject, visitor, features, UNLIMITED_DEPTH);
+  }
+
+  /**
+   * Prepares the exploration of an object graph up to the given depth, which
+   * is then carried out in budgeted slices by calling
+   * {@link Exploration#run(long, long, TimeUnit)}.
+   *
+   * <p>Run to completion, the exploration behaves exactly as
+   * {@link #exploreObject(Object, ObjectVisitor, EnumSet, int)}.
+   *
+   * @param <T> the type of the value obtained (after the traversal) by the
+   * ObjectVisitor
+   * @param rootObject an object to be recursively explored
+   * @param visitor a visitor that is notified for each explored path
+   * and decides whether to continue exploration of that path, and constructs
+   * a return value at the end of the exploration
+   * @param features a set of desired features that the object exploration should have
+   * @param maxDepth the maximum depth of the explored values, or
+   * {@link #UNLIMITED_DEPTH}
+   * @return the exploration, not started yet
+   * @throws IllegalArgumentException if {@code maxDepth} is negative
+   */
+  public static <T> Exploration<T> newExploration(Object rootObject,
+      ObjectVisitor<T> visitor, EnumSet<Feature> features, int maxDepth) {
+    Exploration<T> exploration = new Exploration<T>(
+        chainTracking(visitor), features, maxDepth, true);
+    if (rootObject != null) exploration.pushRoot(rootObject);
+    return exploration;
+  }
+
+  /**
+   * Prepares the exploration of an object graph (defined by a root object
+   * and whatever is reachable through it, following non-static fields),
+   * which is then carried out in budgeted slices by calling
+   * {@link Exploration#run(long, long, TimeUnit)}.
+   *
+   * <p>Run to completion, the exploration behaves exactly as
+   * {@link #exploreObject(Object, EdgeVisitor, EnumSet)}.
+   *
+   * @param <T> the type of the value obtained (after the traversal) by the
+   * EdgeVisitor
+   * @param rootObject an object to be recursively explored
+   * @param visitor a visitor that is notified for each explored edge
+   * and decides whether to continue exploration of that edge, and constructs
+   * a return value at the end of the exploration
+   * @param features a set of desired features that the object exploration should have
+   * @return the exploration, not started yet
+   */
+  public static <T> Exploration<T> newExploration(Object rootObject,
+      EdgeVisitor<T> visitor, EnumSet<Feature> features) {
+    return newExploration(rootObject, visitor, features, UNLIMITED_DEPTH);
+  }
+
+  /**
+   * Prepares the exploration of an object graph up to the given depth, which
+   * is then carried out in budgeted slices by calling
+   * {@link Exploration#run(long, long, TimeUnit)}.
+   *
+   * <p>Run to completion, the exploration behaves exactly as
+   * {@link #exploreObject(Object, EdgeVisitor, EnumSet, int)}.
+   *
+   * @param <T> the type of the value obtained (after the traversal) by the
+   * EdgeVisitor
+   * @param rootObject an object to be recursively explored
+   * @param visitor a visitor that is notified for each explored edge
+   * and decides whether to continue exploration of that edge, and constructs
+   * a return value at the end of the exploration
+   * @param features a set of desired features that the object exploration should have
+   * @param maxDepth the maximum depth of the explored values, or
+   * {@link #UNLIMITED_DEPTH}
+   * @return the exploration, not started yet
+   * @throws IllegalArgumentException if {@code maxDepth} is negative
+   */
+  public static <T> Exploration<T> newExploration(Object rootObject,
+      EdgeVisitor<T> visitor, EnumSet<Feature> features, int maxDepth) {
+    Exploration<T> exploration = new Exploration<T>(visitor, features, maxDepth, false);
+    if (rootObject != null) exploration.pushRoot(rootObject);
+    return exploration;
+  }
+
+  /**
+   * Explores an object graph (defined by a root object and whatever is
+   * reachable through it, following non-static fields) using several
+   * threads of the given pool.
+   *
+   * <p>The exploration is split among tasks, and each task gets its own
+   * visitor from {@code visitors}. Each visitor only sees part of the
+   * graph, so visitors that must see each object once (for example, to count
+   * it) should share thread-safe state to that end, such as a
+   * {@link ConcurrentAtMostOnceEdgePredicate}. When all tasks are done, the
+   * results of their visitors are combined by {@code merger}.
+   *
+   * <p>The {@code features} have the same meaning as in
+   * {@link #exploreObject(Object, EdgeVisitor, EnumSet)}, but there is no
+   * guarantee about the order in which edges are visited, and
+   * {@link Feature#TRACK_REACHABILITY} is not supported.
+   *
+   * @param <T> the type of the value obtained (after the traversal) by the
+   * EdgeVisitors
+   * @param rootObject an object to be recursively explored
+   * @param visitors a supplier of (non-shared) visitors, one for each task
+   * @param merger combines the results of two visitors
+   * @param features a set of desired features that the object exploration should have
+   * @param pool the pool that runs the exploration tasks
+   * @return the merged results of the visitors at the end of the traversal
+   * @throws IllegalArgumentException if {@code features} contains
+   * {@link Feature#TRACK_REACHABILITY}
+   */
+  public static <T> T exploreObjectInParallel(Object rootObject,
+      Supplier<? extends EdgeVisitor<T>> visitors, Merger<T> merger,
+      EnumSet<Feature> features, ForkJoinPool pool) {
+    Preconditions.checkNotNull(visitors, "visitors");
+    Preconditions.checkNotNull(merger, "merger");
+    Preconditions.checkNotNull(pool, "pool");
+    Preconditions.checkArgument(!features.contains(Feature.TRACK_REACHABILITY),
+        "Reachability cannot be tracked by parallel explorations");
+    return new ParallelExploration<T>(visitors, merger, features).explore(rootObject, pool);
+  }
+
+  /**
+   * Adapts an {@link ObjectVisitor} to the exploration, building the chain
+   * of each visited value from the chain of its parent.
+   */
+  private static <T> EdgeVisitor<T> chainTracking(ObjectVisitor<T> visitor) {
+    return visitor instanceof PrimitiveVisitor
+        ? new PrimitiveChainTrackingVisitor<T>(visitor)
+        : new ChainTrackingVisitor<T>(visitor);
+  }
+
+  private static class ChainTrackingVisitor<T> implements EdgeVisitor<T> {
+    private final ObjectVisitor<T> delegate;
 
-      //only nonnull values pushed in the stack
-      @Nonnull Object value = chain.getValue();
-      Class<?> valueClass = value.getClass();
-      if (valueClass.isArray()) {
-        boolean isPrimitive = valueClass.getComponentType().isPrimitive();
-        for (int i = Array.getLength(value) - 1; i >= 0; i--) {
-          Object childValue = Array.get(value, i);
-          if (isPrimitive) {
-            if (features.contains(Feature.VISIT_PRIMITIVES))
-              visitor.visit(chain.appendArrayIndex(i, childValue));
-            continue;
-          }
-          if (childValue == null) {
-            if (features.contains(Feature.VISIT_NULL))
-              visitor.visit(chain.appendArrayIndex(i, childValue));
-            continue;
-          }
-          stack.addFirst(chain.appendArrayIndex(i, childValue));
-        }
+    ChainTrackingVisitor(ObjectVisitor<T> delegate) {
+      this.delegate = delegate;
+    }
+
+    public Traversal visit(Edge edge) {
+      Chain chain;
+      if (edge.isRoot()) {
+        chain = Chain.root(edge.getValue());
+      } else if (edge.isThroughField()) {
+        chain = edge.parentChain.appendField(edge.getField(), edge.getValue());
       } else {
-        for (Field field : getAllFields(value)) {
-          if (Modifier.isStatic(field.getModifiers())) continue;
-          Object childValue = null;
-          try {
-            childValue = field.get(value);
-          } catch (Exception e) {
-            throw new AssertionError(e);
-          }
-          if (childValue == null) {
-            if (features.contains(Feature.VISIT_NULL))
-              visitor.visit(chain.appendField(field, childValue));
-            continue;
-          }
-          boolean isPrimitive = field.getType().isPrimitive();
-          Chain extendedChain = chain.appendField(field, childValue);
-          if (isPrimitive) {
-            if (features.contains(Feature.VISIT_PRIMITIVES))
-              visitor.visit(extendedChain);
-            continue;
-          } else {
-            stack.addFirst(extendedChain);
-          }
-        }
+        chain = edge.parentChain.appendArrayIndex(edge.getArrayIndex(), edge.getValue());
       }
+      edge.chain = chain;
+      return delegate.visit(chain);
+    }
+
+    public T result() {
+      return delegate.result();
+    }
+  }
+
+  private static class PrimitiveChainTrackingVisitor<T> extends ChainTrackingVisitor<T>
+      implements PrimitiveVisitor {
+    private final PrimitiveVisitor delegate;
+
+    PrimitiveChainTrackingVisitor(ObjectVisitor<T> delegate) {
+      super(delegate);
+      this.delegate = (PrimitiveVisitor) delegate;
+    }
+
+    public void visitPrimitiveField(Object object, Field field, Class<?> primitiveType) {
+      delegate.visitPrimitiveField(object, field, primitiveType);
+    }
+
+    public void visitPrimitiveArray(Object array, Class<?> componentType, int length) {
+      delegate.visitPrimitiveArray(array, componentType, length);
     }
-    return visitor.result();
   }
 
+  /**
+   * A predicate that accepts each value only the first time it is seen
+   * (except {@code Class} objects, which are always accepted).
+   *
+   * <p>The values seen are kept in a compact identity set, which can be
+   * sized upfront for the number of objects expected in the graph, and
+   * cleared in order to reuse the predicate for another traversal.
+   */
   public static class AtMostOncePredicate implements Predicate<Chain> {
-    private final Map<Object, Boolean> interner = new IdentityHashMap<Object, Boolean>();
+    private final IdentitySet seen;
+
+    public AtMostOncePredicate() {
+      this.seen = new IdentitySet();
+    }
+
+    /**
+     * Creates a predicate that can remember {@code expectedObjects} values
+     * without having to grow.
+     */
+    public AtMostOncePredicate(int expectedObjects) {
+      this.seen = new IdentitySet(expectedObjects);
+    }
 
     public boolean apply(Chain chain) {
-      Object o = chain.getValue();
-      return o instanceof Class<?> || (interner.put(o, Boolean.TRUE) == null);
+      return firstVisit(chain.getValue());
+    }
+
+    boolean firstVisit(Object o) {
+      return o instanceof Class<?> || seen.add(o);
+    }
+
+    /**
+     * Forgets all values seen so far.
+     */
+    public void clear() {
+      seen.clear();
     }
   }
 
-  static final Predicate<Chain> notEnumFieldsOrClasses = new Predicate<Chain>(){
-    public boolean apply(Chain chain) {
-      return !(Enum.class.isAssignableFrom(chain.getValueType())
-          || chain.getValue() instanceof Class<?>);
+  /**
+   * The {@link Edge} counterpart of {@link AtMostOncePredicate}: accepts each
+   * value only the first time it is seen.
+   */
+  public static class AtMostOnceEdgePredicate implements Predicate<Edge> {
+    private final AtMostOncePredicate seen;
+
+    public AtMostOnceEdgePredicate() {
+      this.seen = new AtMostOncePredicate();
+    }
+
+    /**
+     * Creates a predicate that can remember {@code expectedObjects} values
+     * without having to grow.
+     */
+    public AtMostOnceEdgePredicate(int expectedObjects) {
+      this.seen = new AtMostOncePredicate(expectedObjects);
+    }
+
+    public boolean apply(Edge edge) {
+      return seen.firstVisit(edge.getValue());
+    }
+
+    boolean firstVisit(Object o) {
+      return seen.firstVisit(o);
+    }
+
+    /**
+     * Forgets all values seen so far.
+     */
+    public void clear() {
+      seen.clear();
+    }
+  }
+
+  /**
+   * A thread-safe {@link AtMostOnceEdgePredicate}, meant to be shared among
+   * the visitors of a parallel exploration.
+   */
+  public static class ConcurrentAtMostOnceEdgePredicate implements Predicate<Edge> {
+    private static final int SEGMENTS = 64;
+
+    private final AtMostOncePredicate[] segments = new AtMostOncePredicate[SEGMENTS];
+
+    public ConcurrentAtMostOnceEdgePredicate() {
+      this(0);
     }
-  };
 
-  static final Function<Chain, Object> chainToObject =
-    new Function<Chain, Object>() {
-    public Object apply(Chain chain) {
-      return chain.getValue();
+    /**
+     * Creates a predicate that can remember about {@code expectedObjects}
+     * values without having to grow.
+     */
+    public ConcurrentAtMostOnceEdgePredicate(int expectedObjects) {
+      for (int i = 0; i < SEGMENTS; i++) {
+        segments[i] = new AtMostOncePredicate(expectedObjects / SEGMENTS);
+      }
     }
-  };
 
-  private static Iterable<Field> getAllFields(Object o) {
-    List<Field> fields = Lists.newArrayListWithCapacity(8);
-    Class<?> clazz = o.getClass();
-    while (clazz != null) {
-      fields.addAll(Arrays.asList(clazz.getDeclaredFields()));
-      clazz = clazz.getSuperclass();
+    public boolean apply(Edge edge) {
+      Object o = edge.getValue();
+      int hash = System.identityHashCode(o);
+      AtMostOncePredicate segment = segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+      synchronized (segment) {
+        return segment.firstVisit(o);
+      }
     }
+  }
 
-    //all together so there is only one security check
-    AccessibleObject.setAccessible(fields.toArray(new AccessibleObject[fields.size()]), true);
-    return fields;
+  /**
+   * Combines the results of the visitors of a parallel exploration into one.
+   * Since results may be combined in any order, merging must be associative
+   * and commutative.
+   *
+   * @param <T> the type of the combined results
+   * @see ObjectExplorer#exploreObjectInParallel(Object, Supplier, Merger, EnumSet, ForkJoinPool)
+   */
+  public interface Merger<T> {
+    /**
+     * Returns the combination of two results.
+     */
+    T merge(T first, T second);
   }
 
   /**
@@ -210,8 +549,25 @@ public class ObjectExplorer {
     VISIT_NULL,
 
     /**
-     * Primitive values should be visited.
+     * Primitive values should be visited (one by one, or in bulk for
+     * visitors that implement {@link PrimitiveVisitor}).
+     */
+    VISIT_PRIMITIVES,
+
+    /**
+     * Values should be explored in breadth-first order, i.e. in order of
+     * increasing depth, rather than depth-first.
+     */
+    BREADTH_FIRST,
+
+    /**
+     * The referents of {@link java.lang.ref.Reference}s should be told apart
+     * from strongly reachable values. Values reachable without going through
+     * any reference are explored first, then the ones only reachable through
+     * soft references, then through weak references, and last through
+     * phantom (or other) references, so that each value is first visited
+     * with its {@link Edge#getReachability() reachability}.
      */
-    VISIT_PRIMITIVES
+    TRACK_REACHABILITY
   }
 }
@@ -20,17 +20,22 @@
 package objectexplorer;
 
 import objectexplorer.ObjectExplorer.Feature;
+import objectexplorer.ObjectExplorer.Merger;
+import objectexplorer.ObjectVisitor.Traversal;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
-import com.google.common.collect.HashMultiset;
+import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMultiset;
-import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multiset;
+import com.google.common.primitives.Ints;
 
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
 import java.util.EnumSet;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * A tool that can qualitatively measure the footprint
@@ -42,14 +47,16 @@ public class ObjectGraphMeasurer {
    * The footprint of an object graph.
    */
   public static class Footprint {
-    private final int objects;
-    private final int references;
-    private final ImmutableMultiset<Class<?>> primitives;
-
-    private static final ImmutableSet<Class<?>> primitiveTypes = ImmutableSet.<Class<?>>of(
+    // the order of the primitive counts
+    private static final ImmutableList<Class<?>> primitiveTypes = ImmutableList.<Class<?>>of(
         boolean.class, byte.class, char.class, short.class,
         int.class, float.class, long.class, double.class);
 
+    private final long objects;
+    private final long arrays;
+    private final long references;
+    private final long[] primitives;
+
     /**
      * Constructs a Footprint, by specifying the number of objects,
      * references, and primitives (represented as a {@link Multiset}).
@@ -60,44 +67,149 @@ public class ObjectGraphMeasurer {
      * respective primitive classes, e.g. {@code int.class} etc)
      */
     public Footprint(int objects, int references, Multiset<Class<?>> primitives) {
+      this(objects, 0, references, countsOf(primitives));
+    }
+
+    /**
+     * Constructs a Footprint, by specifying the number of objects (of which
+     * arrays), references, and primitives of each type.
+     *
+     * @param primitives the number of primitives of each type, in the order
+     * boolean, byte, char, short, int, float, long, double; owned by the
+     * footprint from then on
+     */
+    Footprint(long objects, long arrays, long references, long[] primitives) {
       Preconditions.checkArgument(objects >= 0, "Negative number of objects");
+      Preconditions.checkArgument(arrays >= 0 && arrays <= objects, "Invalid number of arrays");
       Preconditions.checkArgument(references >= 0, "Negative number of references");
-      Preconditions.checkArgument(primitiveTypes.containsAll(primitives.elementSet()),
-      "Unexpected primitive type");
       this.objects = objects;
+      this.arrays = arrays;
       this.references = references;
-      this.primitives = ImmutableMultiset.copyOf(primitives);
+      this.primitives = primitives;
+    }
+
+    private static long[] countsOf(Multiset<Class<?>> primitives) {
+      long[] counts = new long[primitiveTypes.size()];
+      for (Multiset.Entry<Class<?>> entry : primitives.entrySet()) {
+        int kind = primitiveTypes.indexOf(entry.getElement());
+        Preconditions.checkArgument(kind >= 0, "Unexpected primitive type");
+        counts[kind] = entry.getCount();
+      }
+      return counts;
     }
 
     /**
-     * Returns the number of objects of this footprint.
+     * Returns the position of the given primitive type in the primitive
+     * counts.
+     */
+    static int kindOf(Class<?> primitiveType) {
+      if (primitiveType == int.class) {
+        return 4;
+      } else if (primitiveType == long.class) {
+        return 6;
+      } else if (primitiveType == byte.class) {
+        return 1;
+      } else if (primitiveType == char.class) {
+        return 2;
+      } else if (primitiveType == double.class) {
+        return 7;
+      } else if (primitiveType == boolean.class) {
+        return 0;
+      } else if (primitiveType == float.class) {
+        return 5;
+      } else {
+        return 3;
+      }
+    }
+
+    /**
+     * Returns the number of objects of this footprint, or
+     * {@code Integer.MAX_VALUE} if there are more.
+     *
+     * @see #getObjectCount()
      */
     public int getObjects() {
+      return Ints.saturatedCast(objects);
+    }
+
+    /**
+     * Returns the number of objects of this footprint.
+     */
+    public long getObjectCount() {
       return objects;
     }
 
     /**
-     * Returns the number of references of this footprint.
+     * Returns the number of objects of this footprint that are arrays (as
+     * counted by a measurement; footprints constructed from {@code int}
+     * counts have none).
+     */
+    public long getArrayCount() {
+      return arrays;
+    }
+
+    /**
+     * Returns the number of references of this footprint, or
+     * {@code Integer.MAX_VALUE} if there are more.
+     *
+     * @see #getReferenceCount()
      */
     public int getReferences() {
+      return Ints.saturatedCast(references);
+    }
+
+    /**
+     * Returns the number of references of this footprint.
+     */
+    public long getReferenceCount() {
       return references;
     }
 
     /**
      * Returns the number of primitives of this footprint
      * (represented by the respective primitive classes,
-     * {@literal e.g.} {@code int.class} etc).
+     * {@literal e.g.} {@code int.class} etc). Counts that do not fit in an
+     * {@code int} are given as {@code Integer.MAX_VALUE}.
+     *
+     * @see #getPrimitiveCount(Class)
      */
     public ImmutableMultiset<Class<?>> getPrimitives() {
-      return primitives;
+      ImmutableMultiset.Builder<Class<?>> builder = ImmutableMultiset.builder();
+      for (int kind = 0; kind < primitives.length; kind++) {
+        builder.addCopies(primitiveTypes.get(kind), Ints.saturatedCast(primitives[kind]));
+      }
+      return builder.build();
+    }
+
+    /**
+     * Returns the number of primitives of the given type of this footprint.
+     *
+     * @param primitiveType a primitive class, e.g. {@code int.class}
+     */
+    public long getPrimitiveCount(Class<?> primitiveType) {
+      Preconditions.checkArgument(primitiveType.isPrimitive() && primitiveType != void.class,
+          "Not a primitive type: %s", primitiveType);
+      return primitives[kindOf(primitiveType)];
+    }
+
+    /**
+     * Returns the number of bytes taken by the primitives of this footprint.
+     */
+    long getPrimitiveBytes() {
+      long bytes = 0;
+      for (int kind = 0; kind < primitives.length; kind++) {
+        bytes += primitives[kind] * MemoryModel.sizeOfPrimitive(primitiveTypes.get(kind));
+      }
+      return bytes;
     }
 
     @Override
     public String toString() {
       return Objects.toStringHelper(this)
       .add("Objects", objects)
+      .add("Arrays", arrays)
       .add("References", references)
-      .add("Primitives", primitives)
+      .add("Primitives", getPrimitives())
       .toString();
     }
   }
@@ -106,9 +218,9 @@ public class ObjectGraphMeasurer {
    * Measures the footprint of the specified object graph.
    * The object graph is defined by a root object and whatever object can be
    * reached through that, excluding static fields, {@code Class} objects,
-   * and fields defined in {@code enum}s (all these are considered shared
-   * values, which should not contribute to the cost of any single object
-   * graph).
+   * fields defined in {@code enum}s and {@link SharedConstants shared
+   * constants} (all these are considered shared values, which should not
+   * contribute to the cost of any single object graph).
    *
    * <p>Equivalent to {@code measure(rootObject, Predicates.alwaysTrue())}.
    *
@@ -123,10 +235,10 @@ public class ObjectGraphMeasurer {
    * Measures the footprint of the specified object graph.
    * The object graph is defined by a root object and whatever object can be
    * reached through that, excluding static fields, {@code Class} objects,
-   * and fields defined in {@code enum}s (all these are considered shared
-   * values, which should not contribute to the cost of any single object
-   * graph), and any object for which the user-provided predicate returns
-   * {@code false}.
+   * fields defined in {@code enum}s and {@link SharedConstants shared
+   * constants} (all these are considered shared values, which should not
+   * contribute to the cost of any single object graph), and any object for
+   * which the user-provided predicate returns {@code false}.
    *
    * @param rootObject the root object of the object graph
    * @param objectAcceptor a predicate that returns {@code true} for objects
@@ -137,43 +249,138 @@ public class ObjectGraphMeasurer {
   public static Footprint measure(Object rootObject, Predicate<Object> objectAcceptor) {
     Preconditions.checkNotNull(objectAcceptor, "predicate");
 
-    Predicate<Chain> completePredicate = Predicates.and(ImmutableList.of(
-        ObjectExplorer.notEnumFieldsOrClasses,
-        Predicates.compose(objectAcceptor, ObjectExplorer.chainToObject),
-        new ObjectExplorer.AtMostOncePredicate()
-    ));
+    return ObjectExplorer.exploreObject(rootObject,
+        new ObjectGraphVisitor(completePredicate(objectAcceptor,
+            new ObjectExplorer.AtMostOnceEdgePredicate())),
+        EnumSet.of(Feature.VISIT_NULL));
+  }
+
+  /**
+   * Measures the footprint of the specified object graph, using several
+   * threads of the given pool. The result is the same as the one of
+   * {@link #measure(Object)}.
+   *
+   * @param rootObject the root object of the object graph
+   * @param pool the pool that runs the measurement
+   * @return the footprint of the object graph
+   */
+  public static Footprint measure(Object rootObject, ForkJoinPool pool) {
+    return measure(rootObject, Predicates.alwaysTrue(), pool);
+  }
+
+  /**
+   * Measures the footprint of the specified object graph, using several
+   * threads of the given pool. The result is the same as the one of
+   * {@link #measure(Object, Predicate)}.
+   *
+   * @param rootObject the root object of the object graph
+   * @param objectAcceptor a thread-safe predicate that returns {@code true}
+   * for objects to be explored (and treated as part of the footprint), or
+   * {@code false} to forbid the traversal to traverse the given object
+   * @param pool the pool that runs the measurement
+   * @return the footprint of the object graph
+   */
+  public static Footprint measure(Object rootObject, Predicate<Object> objectAcceptor,
+      ForkJoinPool pool) {
+    Preconditions.checkNotNull(objectAcceptor, "predicate");
+
+    final Predicate<Edge> completePredicate = completePredicate(objectAcceptor,
+        new ObjectExplorer.ConcurrentAtMostOnceEdgePredicate());
+
+    return ObjectExplorer.exploreObjectInParallel(rootObject,
+        new Supplier<ObjectGraphVisitor>() {
+          public ObjectGraphVisitor get() {
+            return new ObjectGraphVisitor(completePredicate);
+          }
+        },
+        footprintMerger, EnumSet.of(Feature.VISIT_NULL), pool);
+  }
+
+  /**
+   * Returns a visitor that measures the footprint of an object graph, as
+   * {@link #measure(Object, Predicate)} does, to be run along with other
+   * visitors by a {@link CompositeVisitor}. The exploration must visit null
+   * values (see {@link Feature#VISIT_NULL}) for null references to be
+   * counted.
+   *
+   * @param objectAcceptor a predicate that returns {@code true} for objects
+   * to be explored (and treated as part of the footprint), or {@code false}
+   * to forbid the traversal to traverse the given object
+   * @param atMostOnce the predicate that tells whether an object is visited
+   * for the first time, such as {@link CompositeVisitor#atMostOnce()}
+   * @return a visitor whose result is the footprint of the object graph
+   */
+  public static EdgeVisitor<Footprint> newFootprintVisitor(Predicate<Object> objectAcceptor,
+      Predicate<Edge> atMostOnce) {
+    Preconditions.checkNotNull(objectAcceptor, "predicate");
+    Preconditions.checkNotNull(atMostOnce, "atMostOnce");
+
+    return new ObjectGraphVisitor(completePredicate(objectAcceptor, atMostOnce));
+  }
 
-    return ObjectExplorer.exploreObject(rootObject, new ObjectGraphVisitor(completePredicate),
-        EnumSet.of(Feature.VISIT_PRIMITIVES, Feature.VISIT_NULL));
+  private static Predicate<Edge> completePredicate(Predicate<Object> objectAcceptor,
+      Predicate<Edge> atMostOncePredicate) {
+    return new MeasurementPredicate(objectAcceptor, atMostOncePredicate);
   }
 
-  private static class ObjectGraphVisitor implements ObjectVisitor<Footprint> {
-    private int objects;
-    // -1 to account for the root, which has no reference leading to it
-    private int references = -1;
-    private final Multiset<Class<?>> primitives = HashMultiset.create();
-    private final Predicate<Chain> predicate;
+  private static final Merger<Footprint> footprintMerger = new Merger<Footprint>() {
+    public Footprint merge(Footprint first, Footprint second) {
+      long[] primitives = first.primitives.clone();
+      for (int kind = 0; kind < primitives.length; kind++) {
+        primitives[kind] += second.primitives[kind];
+      }
+      return new Footprint(first.objects + second.objects, first.arrays + second.arrays,
+          first.references + second.references, primitives);
+    }
+  };
+
+  /**
+   * Counts the primitives of each explored object as a whole (the length of a
+   * primitive array, or the primitive fields of its class), rather than
+   * visiting them one by one.
+   */
+  private static class ObjectGraphVisitor implements EdgeVisitor<Footprint> {
+    private long objects;
+    private long arrays;
+    private long references;
+    private final long[] primitives = new long[8];
+    private final Predicate<Edge> predicate;
 
-    ObjectGraphVisitor(Predicate<Chain> predicate) {
+    ObjectGraphVisitor(Predicate<Edge> predicate) {
       this.predicate = predicate;
     }
 
-    public Traversal visit(Chain chain) {
-      if (chain.isPrimitive()) {
-        primitives.add(chain.getValueType());
-        return Traversal.SKIP;
-      } else {
+    public Traversal visit(Edge edge) {
+      if (!edge.isRoot()) {
+        // the root has no reference leading to it
         references++;
       }
-      if (predicate.apply(chain) && chain.getValue() != null) {
+      Object o = edge.getValue();
+      if (predicate.apply(edge) && o != null) {
         objects++;
+        countArrayAndPrimitives(o);
         return Traversal.EXPLORE;
       }
       return Traversal.SKIP;
     }
 
+    private void countArrayAndPrimitives(Object o) {
+      Class<?> type = o.getClass();
+      if (type.isArray()) {
+        arrays++;
+        Class<?> componentType = type.getComponentType();
+        if (componentType.isPrimitive()) {
+          primitives[Footprint.kindOf(componentType)] += Array.getLength(o);
+        }
+      } else {
+        for (Field field : ClassLayout.of(type).primitiveFields()) {
+          primitives[Footprint.kindOf(field.getType())]++;
+        }
+      }
+    }
+
     public Footprint result() {
-      return new Footprint(objects, references, ImmutableMultiset.copyOf(primitives));
+      return new Footprint(objects, arrays, references, primitives.clone());
     }
   }
 }
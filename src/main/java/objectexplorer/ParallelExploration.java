@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * BEGIN COPYRIGHT NOTICE
+ * 
+ * Copyright [2011] [Rodrigo Lemos]
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * END COPYRIGHT NOTICE
+ ******************************************************************************/
+package objectexplorer;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import objectexplorer.ObjectExplorer.Feature;
+import objectexplorer.ObjectExplorer.Merger;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.Lists;
+
+/**
+ * The fork/join counterpart of {@link Exploration}.
+ *
+ * <p>Each task runs a sequential exploration with a visitor of its own. Every
+ * time a task has enough references left to explore (which is what happens
+ * after opening a wide array, or many objects) while the pool is short of
+ * queued work, half of the references of its oldest open object are handed
+ * over to a new forked task. The visitors' results are merged once all tasks are done.
+ */
+final class ParallelExploration<T> {
+  /**
+   * The minimum number of pending references for a task to be split.
+   */
+  private static final int SPLIT_THRESHOLD = 32;
+
+  /**
+   * Tasks are only split while fewer than this many tasks are queued in
+   * excess of what idle workers may steal.
+   */
+  private static final int MAX_SURPLUS_TASKS = 3;
+
+  private final Supplier<? extends EdgeVisitor<T>> visitors;
+  private final Merger<T> merger;
+  private final EnumSet<Feature> features;
+
+  ParallelExploration(Supplier<? extends EdgeVisitor<T>> visitors, Merger<T> merger,
+      EnumSet<Feature> features) {
+    this.visitors = visitors;
+    this.merger = merger;
+    this.features = features;
+  }
+
+  T explore(Object rootObject, ForkJoinPool pool) {
+    Exploration<T> exploration = new Exploration<T>(visitors.get(), features,
+        ObjectExplorer.UNLIMITED_DEPTH, false);
+    if (rootObject != null) exploration.pushRoot(rootObject);
+    return pool.invoke(new ExplorationTask(exploration));
+  }
+
+  private final class ExplorationTask extends RecursiveTask<T> {
+    private static final long serialVersionUID = 1L;
+
+    private final Exploration<T> exploration;
+
+    ExplorationTask(Exploration<T> exploration) {
+      this.exploration = exploration;
+    }
+
+    @Override
+    protected T compute() {
+      List<ExplorationTask> forked = Lists.newArrayList();
+      while (exploration.pending() > 0) {
+        exploration.step();
+        if (exploration.pending() >= SPLIT_THRESHOLD
+            && getSurplusQueuedTaskCount() < MAX_SURPLUS_TASKS) {
+          ExplorationTask task = new ExplorationTask(exploration.split(visitors.get()));
+          task.fork();
+          forked.add(task);
+        }
+      }
+
+      T result = exploration.result();
+      // most recently forked first, as those are the likeliest to be still unstolen
+      for (int i = forked.size() - 1; i >= 0; i--) {
+        result = merger.merge(result, forked.get(i).join());
+      }
+      return result;
+    }
+  }
+}
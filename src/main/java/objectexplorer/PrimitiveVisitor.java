@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * BEGIN COPYRIGHT NOTICE
+ * 
+ * Copyright [2011] [Rodrigo Lemos]
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * END COPYRIGHT NOTICE
+ ******************************************************************************/
+package objectexplorer;
+
+import java.lang.reflect.Field;
+
+/**
+ * An addition to {@link ObjectVisitor} or {@link EdgeVisitor} for visitors
+ * that want to know about primitive values without being called (with a
+ * boxed value) for each of them. Visitors that implement this interface, in
+ * explorations with {@link ObjectExplorer.Feature#VISIT_PRIMITIVES}, are
+ * called once per primitive field of each explored object and once per
+ * explored primitive array, instead of once per primitive value; they may
+ * read the values from the object or array themselves.
+ */
+public interface PrimitiveVisitor {
+  /**
+   * Visits a primitive field of an explored object.
+   *
+   * @param object the explored object
+   * @param field the primitive field
+   * @param primitiveType the type of the field, e.g. {@code int.class}
+   */
+  void visitPrimitiveField(Object object, Field field, Class<?> primitiveType);
+
+  /**
+   * Visits all the elements of an explored primitive array.
+   *
+   * @param array the explored array
+   * @param componentType the type of the elements, e.g. {@code int.class}
+   * @param length the length of the array
+   */
+  void visitPrimitiveArray(Object array, Class<?> componentType, int length);
+}
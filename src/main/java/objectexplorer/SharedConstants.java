@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * BEGIN COPYRIGHT NOTICE
+ * 
+ * Copyright [2011] [Rodrigo Lemos]
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * END COPYRIGHT NOTICE
+ ******************************************************************************/
+package objectexplorer;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+/**
+ * A registry of objects shared by the whole VM, such as {@code Boolean.TRUE},
+ * the cached small boxed integers and the empty collection singletons. Like
+ * {@code Class} objects and enum constants, they are never freed with the
+ * object graphs that reference them, so measurements neither explore nor
+ * count them.
+ *
+ * <p>The registry starts with the well-known constants of the JDK and of
+ * Guava, and can be extended with those of an application. Strings are not
+ * registered unless explicitly, since telling whether a string is interned
+ * takes interning it.
+ */
+public final class SharedConstants {
+  private static final List<Object> constants = Lists.newArrayList();
+  // replaced by a larger copy whenever constants are registered, so that lookups need no lock
+  private static volatile IdentitySet lookup = new IdentitySet();
+
+  static {
+    List<Object> wellKnown = Lists.newArrayList();
+    wellKnown.add(Boolean.TRUE);
+    wellKnown.add(Boolean.FALSE);
+    // the caches that valueOf is required to use
+    for (int i = Byte.MIN_VALUE; i <= Byte.MAX_VALUE; i++) {
+      wellKnown.add(Byte.valueOf((byte) i));
+      wellKnown.add(Short.valueOf((short) i));
+      wellKnown.add(Integer.valueOf(i));
+      wellKnown.add(Long.valueOf(i));
+    }
+    for (char c = 0; c <= 127; c++) {
+      wellKnown.add(Character.valueOf(c));
+    }
+    wellKnown.add("");
+    wellKnown.add(Collections.EMPTY_LIST);
+    wellKnown.add(Collections.EMPTY_SET);
+    wellKnown.add(Collections.EMPTY_MAP);
+    wellKnown.add(Collections.emptyIterator());
+    wellKnown.add(Collections.emptyListIterator());
+    wellKnown.add(Collections.emptyEnumeration());
+    wellKnown.add(Collections.reverseOrder());
+    wellKnown.add(String.CASE_INSENSITIVE_ORDER);
+    wellKnown.add(ImmutableList.of());
+    wellKnown.add(ImmutableSet.of());
+    wellKnown.add(ImmutableMap.of());
+    registerAll(wellKnown);
+  }
+
+  private SharedConstants() {}
+
+  /**
+   * Registers the given object as shared by the whole VM.
+   */
+  public static void register(Object constant) {
+    registerAll(Collections.singletonList(constant));
+  }
+
+  /**
+   * Registers the given objects as shared by the whole VM.
+   */
+  public static synchronized void registerAll(Iterable<?> newConstants) {
+    List<Object> added = Lists.newArrayList(newConstants);
+    for (Object constant : added) {
+      Preconditions.checkNotNull(constant, "constant");
+    }
+    constants.addAll(added);
+    IdentitySet lookup = new IdentitySet(constants.size());
+    for (Object constant : constants) {
+      lookup.add(constant);
+    }
+    SharedConstants.lookup = lookup;
+  }
+
+  /**
+   * Returns whether the given object is registered as shared by the whole
+   * VM.
+   */
+  public static boolean isSharedConstant(Object object) {
+    return object != null && lookup.contains(object);
+  }
+}
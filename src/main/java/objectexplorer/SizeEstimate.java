@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * BEGIN COPYRIGHT NOTICE
+ * 
+ * Copyright [2011] [Rodrigo Lemos]
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * END COPYRIGHT NOTICE
+ ******************************************************************************/
+package objectexplorer;
+
+import com.google.common.base.Objects;
+
+/**
+ * An estimate of the memory footprint of a collection (or map), obtained by
+ * measuring its backbone exactly and only a random sample of its elements,
+ * along with a 95% confidence interval.
+ *
+ * <p>The elements' bytes are extrapolated from the mean bytes of the sampled
+ * elements, with the variance of the sample (corrected for the finite number
+ * of elements) giving the width of the interval. When every element is
+ * sampled, the estimate is exact.
+ *
+ * @see MemoryMeasurer#estimateBytes(java.util.Collection, double)
+ */
+public final class SizeEstimate {
+  /**
+   * The normal quantile of a two-sided 95% confidence interval.
+   */
+  private static final double Z_95 = 1.959964;
+
+  private final long backboneBytes;
+  private final long elements;
+  private final long sampledElements;
+  private final double bytes;
+  private final double halfWidth;
+
+  private SizeEstimate(long backboneBytes, long elements, long sampledElements,
+      double bytes, double halfWidth) {
+    this.backboneBytes = backboneBytes;
+    this.elements = elements;
+    this.sampledElements = sampledElements;
+    this.bytes = bytes;
+    this.halfWidth = halfWidth;
+  }
+
+  /**
+   * Extrapolates the bytes of all elements from the mean and (unbiased)
+   * variance of the bytes of the sampled ones.
+   */
+  static SizeEstimate of(long backboneBytes, long elements, long sampledElements,
+      double mean, double variance) {
+    double elementBytes = elements * mean;
+    double halfWidth;
+    if (sampledElements >= elements) {
+      halfWidth = 0;
+    } else if (sampledElements < 2) {
+      halfWidth = Double.POSITIVE_INFINITY;
+    } else {
+      halfWidth = Z_95 * elements * Math.sqrt(variance / sampledElements
+          * (1 - (double) sampledElements / elements));
+    }
+    return new SizeEstimate(backboneBytes, elements, sampledElements,
+        backboneBytes + elementBytes, halfWidth);
+  }
+
+  /**
+   * Returns the estimated number of bytes of the collection and its
+   * elements.
+   */
+  public long getBytes() {
+    return Math.round(bytes);
+  }
+
+  /**
+   * Returns the lower bound of the confidence interval, in bytes, which is
+   * never less than the bytes of the backbone.
+   */
+  public long getLowerBound() {
+    return Math.max(backboneBytes, Math.round(bytes - halfWidth));
+  }
+
+  /**
+   * Returns the upper bound of the confidence interval, in bytes, or
+   * {@code Long.MAX_VALUE} if too few elements were sampled to bound it.
+   */
+  public long getUpperBound() {
+    return Math.round(Math.min(bytes + halfWidth, Long.MAX_VALUE));
+  }
+
+  /**
+   * Returns the half width of the confidence interval relative to the
+   * estimate (e.g. {@code 0.01} for an estimate within 1%), or infinity if
+   * too few elements were sampled to bound it.
+   */
+  public double getRelativeError() {
+    return halfWidth == 0 ? 0 : halfWidth / bytes;
+  }
+
+  /**
+   * Returns the exact number of bytes of the backbone of the collection
+   * (the collection itself, along with its arrays and nodes), not counting
+   * its elements.
+   */
+  public long getBackboneBytes() {
+    return backboneBytes;
+  }
+
+  /**
+   * Returns the number of elements of the collection.
+   */
+  public long getElements() {
+    return elements;
+  }
+
+  /**
+   * Returns the number of elements that were measured.
+   */
+  public long getSampledElements() {
+    return sampledElements;
+  }
+
+  /**
+   * Returns whether every element was measured, in which case the estimate
+   * is the exact footprint.
+   */
+  public boolean isExact() {
+    return sampledElements >= elements;
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+    .add("Bytes", getBytes())
+    .add("LowerBound", getLowerBound())
+    .add("UpperBound", getUpperBound())
+    .add("Sampled", sampledElements + "/" + elements)
+    .toString();
+  }
+}
@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * BEGIN COPYRIGHT NOTICE
+ * 
+ * Copyright [2011] [Rodrigo Lemos]
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * END COPYRIGHT NOTICE
+ ******************************************************************************/
+package objectexplorer;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * A predicate over the objects of a graph made of rules on their classes,
+ * on the fields that reference them, and (only where needed) on the objects
+ * themselves. The class rules are resolved once per class into a cached
+ * decision, so that filtering an object usually takes a single lookup, and
+ * the field rules are checked by the measurements, which know the field
+ * each object is reached through.
+ *
+ * <p>A filter can be given wherever an object acceptor predicate is
+ * expected, e.g. to {@link MemoryMeasurer#measureBytes(Object, Predicate)}:
+ *
+ * <pre>   {@code
+ *   TraversalFilter filter = TraversalFilter.builder()
+ *       .excludeInstancesOf(Entry.class)
+ *       .excludeField(Node.class, "parent")
+ *       .build();
+ *   long bytes = MemoryMeasurer.measureBytes(rootObject, filter);}</pre>
+ */
+public final class TraversalFilter implements Predicate<Object> {
+  private enum Decision {
+    ACCEPT, REJECT, CHECK_OBJECT
+  }
+
+  private final ImmutableList<Class<?>> excludedClasses;
+  private final ImmutableSet<Field> excludedFields;
+  private final ImmutableList<Predicate<Object>> objectAcceptors;
+  private final ClassValue<Decision> decisions = new ClassValue<Decision>() {
+    @Override
+    protected Decision computeValue(Class<?> type) {
+      for (Class<?> excludedClass : excludedClasses) {
+        if (excludedClass.isAssignableFrom(type)) return Decision.REJECT;
+      }
+      return objectAcceptors.isEmpty() ? Decision.ACCEPT : Decision.CHECK_OBJECT;
+    }
+  };
+
+  private TraversalFilter(Builder builder) {
+    this.excludedClasses = ImmutableList.copyOf(builder.excludedClasses);
+    this.excludedFields = ImmutableSet.copyOf(builder.excludedFields);
+    this.objectAcceptors = ImmutableList.copyOf(builder.objectAcceptors);
+  }
+
+  /**
+   * Returns a new builder of filters, which accepts everything until told
+   * otherwise.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Returns whether the given object is accepted by the class and object
+   * rules of this filter (field rules aside). {@code null} is accepted.
+   */
+  public boolean apply(Object o) {
+    if (o == null) return true;
+    switch (decisions.get(o.getClass())) {
+      case ACCEPT:
+        return true;
+      case REJECT:
+        return false;
+      default:
+        for (Predicate<Object> acceptor : objectAcceptors) {
+          if (!acceptor.apply(o)) return false;
+        }
+        return true;
+    }
+  }
+
+  /**
+   * Returns whether the value of the given edge is accepted by all the rules
+   * of this filter.
+   */
+  boolean accepts(Edge edge) {
+    if (!excludedFields.isEmpty() && edge.isThroughField()
+        && excludedFields.contains(edge.getField())) {
+      return false;
+    }
+    return apply(edge.getValue());
+  }
+
+  /**
+   * A builder of {@link TraversalFilter}s.
+   */
+  public static final class Builder {
+    private final List<Class<?>> excludedClasses = Lists.newArrayList();
+    private final Set<Field> excludedFields = Sets.newLinkedHashSet();
+    private final List<Predicate<Object>> objectAcceptors = Lists.newArrayList();
+
+    private Builder() {}
+
+    /**
+     * Excludes the instances of the given class and of its subclasses (or
+     * implementations).
+     */
+    public Builder excludeInstancesOf(Class<?> type) {
+      excludedClasses.add(Preconditions.checkNotNull(type, "type"));
+      return this;
+    }
+
+    /**
+     * Excludes whatever is referenced by the given (non-static) field.
+     */
+    public Builder excludeField(Field field) {
+      excludedFields.add(Preconditions.checkNotNull(field, "field"));
+      return this;
+    }
+
+    /**
+     * Excludes whatever is referenced by the field of the given name,
+     * declared by the given class.
+     *
+     * @throws IllegalArgumentException if the class declares no such field
+     */
+    public Builder excludeField(Class<?> declaringClass, String fieldName) {
+      try {
+        return excludeField(declaringClass.getDeclaredField(fieldName));
+      } catch (NoSuchFieldException e) {
+        throw new IllegalArgumentException(e);
+      }
+    }
+
+    /**
+     * Excludes the objects for which the given predicate returns
+     * {@code false}. Such predicates are only asked about objects that the
+     * class rules accept, one object at a time, so they should be kept for
+     * what depends on the objects themselves.
+     */
+    public Builder excludeObjectsUnless(Predicate<Object> objectAcceptor) {
+      objectAcceptors.add(Preconditions.checkNotNull(objectAcceptor, "objectAcceptor"));
+      return this;
+    }
+
+    public TraversalFilter build() {
+      return new TraversalFilter(this);
+    }
+  }
+}
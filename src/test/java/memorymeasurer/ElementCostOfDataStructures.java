@@ -56,6 +56,7 @@ import com.google.common.collect.TreeMultiset;
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -77,9 +78,14 @@ import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import objectexplorer.CompositeVisitor;
+import objectexplorer.EdgeVisitor;
 import objectexplorer.MemoryMeasurer;
+import objectexplorer.ObjectExplorer;
+import objectexplorer.ObjectExplorer.Feature;
 import objectexplorer.ObjectGraphMeasurer;
 import objectexplorer.ObjectGraphMeasurer.Footprint;
+import objectexplorer.TraversalFilter;
 
 public class ElementCostOfDataStructures {
   public static void main(String[] args) throws Exception {
@@ -273,8 +279,9 @@ public class ElementCostOfDataStructures {
   }
 
   static void analyzeOneOff(String caption, Object o) {
-    Footprint footprint = ObjectGraphMeasurer.measure(o);
-    long bytes = MemoryMeasurer.measureBytes(o);
+    Measurement measurement = measure(o, Predicates.alwaysTrue());
+    Footprint footprint = measurement.footprint;
+    long bytes = measurement.bytes;
     System.out.printf("%40s :: Bytes = %6d, Objects = %5d Refs = %5d Primitives = %s%n",
         caption, bytes, footprint.getObjects(), footprint.getReferences(), footprint.getPrimitives());
   }
@@ -283,16 +290,18 @@ public class ElementCostOfDataStructures {
     Preconditions.checkArgument(initialEntries >= 0, "initialEntries negative");
     Preconditions.checkArgument(entriesToAdd > 0, "entriesToAdd negative or zero");
 
-    Predicate<Object> predicate = Predicates.not(Predicates.instanceOf(
-        populator.getEntryType()));
+    Predicate<Object> predicate = TraversalFilter.builder()
+        .excludeInstancesOf(populator.getEntryType())
+        .build();
 
-    Object collection1 = populator.construct(initialEntries);
-    Footprint footprint1 = ObjectGraphMeasurer.measure(collection1, predicate);
-    long bytes1 = MemoryMeasurer.measureBytes(collection1, predicate);
+    Measurement measurement1 = measure(populator.construct(initialEntries), predicate);
+    Footprint footprint1 = measurement1.footprint;
+    long bytes1 = measurement1.bytes;
 
-    Object collection2 = populator.construct(initialEntries + entriesToAdd);
-    Footprint footprint2 = ObjectGraphMeasurer.measure(collection2, predicate);
-    long bytes2 = MemoryMeasurer.measureBytes(collection2, predicate);
+    Measurement measurement2 = measure(populator.construct(initialEntries + entriesToAdd),
+        predicate);
+    Footprint footprint2 = measurement2.footprint;
+    long bytes2 = measurement2.bytes;
 
     double objects = (footprint2.getObjects() - footprint1.getObjects()) / (double) entriesToAdd;
     double refs = (footprint2.getReferences() - footprint1.getReferences()) / (double) entriesToAdd;
@@ -310,6 +319,27 @@ public class ElementCostOfDataStructures {
     return new AvgEntryCost(objects, refs, primitives, bytes);
   }
 
+  // both in a single exploration
+  static Measurement measure(Object o, Predicate<Object> predicate) {
+    CompositeVisitor composite = new CompositeVisitor();
+    EdgeVisitor<Footprint> footprint = composite.add(
+        ObjectGraphMeasurer.newFootprintVisitor(predicate, composite.atMostOnce()));
+    EdgeVisitor<Long> bytes = composite.add(
+        MemoryMeasurer.newBytesVisitor(predicate, composite.atMostOnce()));
+    CompositeVisitor.Results results = ObjectExplorer.exploreObject(o, composite,
+        EnumSet.of(Feature.VISIT_NULL));
+    return new Measurement(results.get(footprint), results.get(bytes));
+  }
+
+  private static class Measurement {
+    final Footprint footprint;
+    final long bytes;
+    Measurement(Footprint footprint, long bytes) {
+      this.footprint = footprint;
+      this.bytes = bytes;
+    }
+  }
+
   private static final ImmutableSet<Class<?>> primitiveTypes = ImmutableSet.<Class<?>>of(
       boolean.class, byte.class, char.class, short.class,
       int.class, float.class, long.class, double.class);
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * BEGIN COPYRIGHT NOTICE
+ * 
+ * Copyright [2011] [Rodrigo Lemos]
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * END COPYRIGHT NOTICE
+ ******************************************************************************/
+package objectexplorer;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+
+import objectexplorer.ClassHistogram.Entry;
+import objectexplorer.Inodes.File;
+import objectexplorer.Inodes.Folder;
+import objectexplorer.Inodes.Inode;
+
+import org.junit.Test;
+
+public class ClassHistogramUnitTest {
+	
+	@Test
+	public void testTop() {
+		ClassHistogram histogram = new ClassHistogram();
+		histogram.add(String.class, 24);
+		histogram.add(Integer.class, 16);
+		histogram.add(String.class, 24);
+		histogram.add(byte[].class, 40);
+		
+		List<Entry> top = histogram.top(2);
+		
+		assertThat(top.size(), is(equalTo(2)));
+		assertThat(top.get(0).getType(), is(equalTo((Object) String.class)));
+		assertThat(top.get(0).getCount(), is(equalTo(2L)));
+		assertThat(top.get(0).getBytes(), is(equalTo(48L)));
+		assertThat(top.get(1).getType(), is(equalTo((Object) byte[].class)));
+		assertThat(histogram.size(), is(equalTo(3)));
+		assertThat(histogram.getTotalCount(), is(equalTo(4L)));
+		assertThat(histogram.getTotalBytes(), is(equalTo(104L)));
+		assertThat(histogram.getCount(Long.class), is(equalTo(0L)));
+	}
+	
+	@Test
+	public void testGrowth() {
+		ClassHistogram histogram = new ClassHistogram();
+		Class<?>[] types = {
+				boolean[].class, byte[].class, char[].class, short[].class,
+				int[].class, float[].class, long[].class, double[].class,
+				Object[].class, String[].class, Integer[].class, Class[].class,
+		};
+		for (int round = 1; round <= 10; round++) {
+			for (Class<?> type : types) {
+				histogram.add(type, round);
+			}
+		}
+		for (Class<?> type : types) {
+			histogram.add(java.lang.reflect.Array.newInstance(type, 0).getClass(), 1);
+		}
+		
+		assertThat(histogram.size(), is(equalTo(2 * types.length)));
+		for (Class<?> type : types) {
+			assertThat(histogram.getCount(type), is(equalTo(10L)));
+			assertThat(histogram.getBytes(type), is(equalTo(55L)));
+		}
+		assertThat(histogram.entries().size(), is(equalTo(2 * types.length)));
+	}
+	
+	@Test
+	public void testMeasureHistogram() {
+		Folder root = ObjectGraphMeasurerUnitTest.newTree(2, 3);
+		
+		ClassHistogram histogram = MemoryMeasurer.measureHistogram(root);
+		
+		assertThat(histogram.getTotalBytes(), is(equalTo(MemoryMeasurer.measureBytes(root))));
+		// 1 + 3 + 9 folders, 27 files (one of which is shared by all leaf folders)
+		assertThat(histogram.getCount(Folder.class), is(equalTo(13L)));
+		assertThat(histogram.getCount(File.class), is(equalTo(19L)));
+		assertThat(histogram.getCount(Inode[].class), is(equalTo(13L)));
+	}
+}
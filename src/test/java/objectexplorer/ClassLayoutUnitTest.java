@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * BEGIN COPYRIGHT NOTICE
+ * 
+ * Copyright [2011] [Rodrigo Lemos]
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * END COPYRIGHT NOTICE
+ ******************************************************************************/
+package objectexplorer;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.lang.reflect.Field;
+
+import objectexplorer.Inodes.File;
+
+import org.junit.Test;
+
+public class ClassLayoutUnitTest {
+	
+	@Test
+	public void testLayoutIsCached() {
+		assertThat(ClassLayout.of(File.class), is(sameInstance(ClassLayout.of(File.class))));
+	}
+	
+	@Test
+	public void testInheritedFields() {
+		ClassLayout layout = ClassLayout.of(ReadOnlyFile.class);
+		ReadOnlyFile file = new ReadOnlyFile();
+		file.contents = new byte[1];
+		file.created = 42;
+		
+		Field[] references = layout.referenceFields();
+		assertThat(references.length, is(equalTo(1)));
+		assertThat(references[0].getName(), is(equalTo("contents")));
+		assertThat(layout.referenceAccessors()[0].get(file), is(sameInstance((Object) file.contents)));
+		
+		Field[] primitives = layout.primitiveFields();
+		assertThat(primitives.length, is(equalTo(2)));
+		assertThat(primitives[0].getName(), is(equalTo("locked")));
+		assertThat(primitives[1].getName(), is(equalTo("created")));
+		assertThat(layout.primitiveAccessors()[0].get(file), is(equalTo((Object) false)));
+		assertThat(layout.primitiveAccessors()[1].get(file), is(equalTo((Object) 42)));
+	}
+	
+	@Test
+	public void testStaticFieldsAreExcluded() {
+		ClassLayout layout = ClassLayout.of(ReadOnlyFile.class);
+		
+		for (Field field : layout.referenceFields())
+			assertThat(field.getName().equals("DEFAULT"), is(equalTo(false)));
+		for (Field field : layout.primitiveFields())
+			assertThat(field.getName().equals("COUNT"), is(equalTo(false)));
+	}
+}
+
+/*****************************************************************************/
+
+class ReadOnlyFile extends File {
+	static final ReadOnlyFile DEFAULT = new ReadOnlyFile();
+	static int COUNT;
+	
+	private boolean locked;
+}
@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * BEGIN COPYRIGHT NOTICE
+ * 
+ * Copyright [2011] [Rodrigo Lemos]
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * END COPYRIGHT NOTICE
+ ******************************************************************************/
+package objectexplorer;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.EnumSet;
+
+import objectexplorer.Inodes.File;
+import objectexplorer.Inodes.Folder;
+import objectexplorer.ObjectExplorer.Feature;
+import objectexplorer.ObjectGraphMeasurer.Footprint;
+
+import org.junit.Test;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+
+public class CompositeVisitorUnitTest {
+	
+	@Test
+	public void testMeasureInOnePass() {
+		Folder root = ObjectGraphMeasurerUnitTest.newTree(3, 4);
+		Predicate<Object> all = Predicates.alwaysTrue();
+		CompositeVisitor composite = new CompositeVisitor();
+		EdgeVisitor<Long> bytes = composite.add(
+				MemoryMeasurer.newBytesVisitor(all, composite.atMostOnce()));
+		EdgeVisitor<Footprint> footprint = composite.add(
+				ObjectGraphMeasurer.newFootprintVisitor(all, composite.atMostOnce()));
+		EdgeVisitor<ClassHistogram> histogram = composite.add(
+				MemoryMeasurer.newHistogramVisitor(all, composite.atMostOnce()));
+		
+		CompositeVisitor.Results results = ObjectExplorer.exploreObject(root, composite,
+				EnumSet.of(Feature.VISIT_NULL));
+		
+		Footprint expected = ObjectGraphMeasurer.measure(root);
+		assertThat(results.get(bytes), is(equalTo(MemoryMeasurer.measureBytes(root))));
+		assertThat(results.get(footprint).getObjectCount(), is(equalTo(expected.getObjectCount())));
+		assertThat(results.get(footprint).getReferenceCount(), is(equalTo(expected.getReferenceCount())));
+		assertThat(results.get(footprint).getPrimitives(), is(equalTo(expected.getPrimitives())));
+		assertThat(results.get(histogram).getTotalCount(), is(equalTo(expected.getObjectCount())));
+	}
+	
+	@Test
+	public void testExploreWhatAnyVisitorExplores() {
+		Folder root = ObjectGraphMeasurerUnitTest.newTree(3, 4);
+		Predicate<Object> notFiles = Predicates.not(Predicates.instanceOf(File.class));
+		CompositeVisitor composite = new CompositeVisitor();
+		EdgeVisitor<Long> bytes = composite.add(
+				MemoryMeasurer.newBytesVisitor(notFiles, composite.atMostOnce()));
+		EdgeVisitor<Footprint> footprint = composite.add(
+				ObjectGraphMeasurer.newFootprintVisitor(Predicates.alwaysTrue(), composite.atMostOnce()));
+		
+		CompositeVisitor.Results results = ObjectExplorer.exploreObject(root, composite,
+				EnumSet.of(Feature.VISIT_NULL));
+		
+		assertThat(results.get(bytes), is(equalTo(MemoryMeasurer.measureBytes(root, notFiles))));
+		assertThat(results.get(footprint).getObjectCount(),
+				is(equalTo(ObjectGraphMeasurer.measure(root).getObjectCount())));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownVisitor() {
+		CompositeVisitor composite = new CompositeVisitor();
+		composite.result().get(MemoryMeasurer.newBytesVisitor(Predicates.alwaysTrue(),
+				composite.atMostOnce()));
+	}
+}
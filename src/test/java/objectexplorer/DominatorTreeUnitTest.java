@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * BEGIN COPYRIGHT NOTICE
+ * 
+ * Copyright [2011] [Rodrigo Lemos]
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * END COPYRIGHT NOTICE
+ ******************************************************************************/
+package objectexplorer;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+import java.util.Random;
+
+import objectexplorer.DominatorTree.Retainer;
+import objectexplorer.Inodes.File;
+import objectexplorer.Inodes.Folder;
+
+import org.junit.Test;
+
+public class DominatorTreeUnitTest {
+	
+	@Test
+	public void testDiamond() {
+		// root -> a, b; a -> c; b -> c; c -> d
+		Object[] objects = newObjects(5);
+		DominatorTree.Builder builder = new DominatorTree.Builder();
+		for (int i = 0; i < objects.length; i++) {
+			builder.addObject(objects[i], 10 * (i + 1));
+		}
+		builder.addReference(0, 1);
+		builder.addReference(0, 2);
+		builder.addReference(1, 3);
+		builder.addReference(2, 3);
+		builder.addReference(3, 4);
+		
+		DominatorTree tree = builder.build();
+		
+		assertThat(tree.getRoot(), is(sameInstance(objects[0])));
+		assertThat(tree.getDominator(objects[0]), is(nullValue()));
+		assertThat(tree.getDominator(objects[1]), is(sameInstance(objects[0])));
+		assertThat(tree.getDominator(objects[3]), is(sameInstance(objects[0])));
+		assertThat(tree.getDominator(objects[4]), is(sameInstance(objects[3])));
+		assertThat(tree.getRetainedBytes(objects[1]), is(equalTo(20L)));
+		assertThat(tree.getRetainedBytes(objects[3]), is(equalTo(90L)));
+		assertThat(tree.getTotalBytes(), is(equalTo(150L)));
+		
+		List<Retainer> top = tree.top(2);
+		assertThat(top.size(), is(equalTo(2)));
+		assertThat(top.get(0).getObject(), is(sameInstance(objects[3])));
+		assertThat(top.get(1).getObject(), is(sameInstance(objects[4])));
+	}
+	
+	@Test
+	public void testRandomGraphs() {
+		Random random = new Random(42);
+		for (int round = 0; round < 50; round++) {
+			int n = 1 + random.nextInt(30);
+			boolean[][] references = new boolean[n][n];
+			Object[] objects = newObjects(n);
+			DominatorTree.Builder builder = new DominatorTree.Builder();
+			for (int i = 0; i < n; i++) {
+				builder.addObject(objects[i], 1);
+			}
+			// a spanning tree, so that everything is reachable, plus random references
+			for (int i = 1; i < n; i++) {
+				int parent = random.nextInt(i);
+				references[parent][i] = true;
+				builder.addReference(parent, i);
+			}
+			for (int k = 0; k < n; k++) {
+				int from = random.nextInt(n);
+				int to = random.nextInt(n);
+				references[from][to] = true;
+				builder.addReference(from, to);
+			}
+			
+			DominatorTree tree = builder.build();
+			
+			for (int i = 0; i < n; i++) {
+				// the objects that become unreachable without object i
+				int retained = 0;
+				boolean[] reachable = reachableWithout(references, i);
+				for (int j = 0; j < n; j++) {
+					if (!reachable[j]) retained++;
+				}
+				assertThat(tree.getRetainedBytes(objects[i]), is(equalTo((long) retained)));
+			}
+		}
+	}
+	
+	@Test
+	public void testMeasureRetainedSizes() {
+		Folder root = ObjectGraphMeasurerUnitTest.newTree(2, 3);
+		
+		DominatorTree tree = MemoryMeasurer.measureRetainedSizes(root);
+		
+		assertThat(tree.getTotalBytes(), is(equalTo(MemoryMeasurer.measureBytes(root))));
+		// the file shared by all leaf folders is only retained by the root's contents
+		File shared = (File) ((Folder) ((Folder) root.contents[0]).contents[0]).contents[0];
+		assertThat(tree.getDominator(shared), is(sameInstance((Object) root.contents)));
+		Folder first = (Folder) root.contents[0];
+		assertThat(tree.getRetainedBytes(first)
+				+ tree.getRetainedBytes(shared),
+				is(equalTo(MemoryMeasurer.measureBytes(first))));
+	}
+	
+	@Test
+	public void testMeasureNull() {
+		DominatorTree tree = MemoryMeasurer.measureRetainedSizes(null);
+		
+		assertThat(tree.size(), is(equalTo(0)));
+		assertThat(tree.getTotalBytes(), is(equalTo(0L)));
+	}
+	
+	private static Object[] newObjects(int n) {
+		Object[] objects = new Object[n];
+		for (int i = 0; i < n; i++) {
+			objects[i] = new Object();
+		}
+		return objects;
+	}
+	
+	private static boolean[] reachableWithout(boolean[][] references, int removed) {
+		int n = references.length;
+		boolean[] reachable = new boolean[n];
+		if (removed == 0) return reachable;
+		int[] stack = new int[n];
+		int size = 0;
+		reachable[0] = true;
+		stack[size++] = 0;
+		while (size > 0) {
+			int from = stack[--size];
+			for (int to = 0; to < n; to++) {
+				if (references[from][to] && to != removed && !reachable[to]) {
+					reachable[to] = true;
+					stack[size++] = to;
+				}
+			}
+		}
+		return reachable;
+	}
+}
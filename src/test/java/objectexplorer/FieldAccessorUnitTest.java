@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * BEGIN COPYRIGHT NOTICE
+ * 
+ * Copyright [2011] [Rodrigo Lemos]
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * END COPYRIGHT NOTICE
+ ******************************************************************************/
+package objectexplorer;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.lang.reflect.Field;
+
+import org.junit.Test;
+
+public class FieldAccessorUnitTest {
+	
+	@Test
+	public void testReadsEveryFieldType() throws Exception {
+		AllTypes target = new AllTypes();
+		ClassLayout layout = ClassLayout.of(AllTypes.class);
+		
+		Field[] fields = layout.primitiveFields();
+		FieldAccessor[] accessors = layout.primitiveAccessors();
+		assertThat(fields.length, is(equalTo(8)));
+		for (int i = 0; i < fields.length; i++) {
+			assertThat(accessors[i].field, is(sameInstance(fields[i])));
+			assertThat(accessors[i].get(target), is(equalTo(fields[i].get(target))));
+		}
+		
+		assertThat(layout.referenceAccessors()[0].get(target), is(sameInstance(target.reference)));
+	}
+}
+
+/*****************************************************************************/
+
+class AllTypes {
+	private boolean z = true;
+	private byte b = 0x12;
+	private char c = 'c';
+	private short s = 1234;
+	private int i = 123456789;
+	private float f = 1.5f;
+	private long j = 1234567890123L;
+	private double d = 2.5;
+	
+	final Object reference = new Object();
+}
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * BEGIN COPYRIGHT NOTICE
+ * 
+ * Copyright [2011] [Rodrigo Lemos]
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * END COPYRIGHT NOTICE
+ ******************************************************************************/
+package objectexplorer;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class IdentitySetUnitTest {
+	
+	@Test
+	public void testIdentity() {
+		IdentitySet set = new IdentitySet();
+		String a = new String("a");
+		String b = new String("a");
+		
+		assertThat(set.add(a), is(equalTo(true)));
+		assertThat(set.add(a), is(equalTo(false)));
+		assertThat(set.contains(b), is(equalTo(false)));
+		assertThat(set.add(b), is(equalTo(true)));
+		assertThat(set.size(), is(equalTo(2)));
+	}
+	
+	@Test
+	public void testNull() {
+		IdentitySet set = new IdentitySet();
+		
+		assertThat(set.contains(null), is(equalTo(false)));
+		assertThat(set.add(null), is(equalTo(true)));
+		assertThat(set.add(null), is(equalTo(false)));
+		assertThat(set.contains(null), is(equalTo(true)));
+		assertThat(set.size(), is(equalTo(1)));
+	}
+	
+	@Test
+	public void testGrowth() {
+		IdentitySet set = new IdentitySet(4);
+		Object[] objects = new Object[10000];
+		for (int i = 0; i < objects.length; i++) {
+			objects[i] = new Object();
+			assertThat(set.add(objects[i]), is(equalTo(true)));
+		}
+		assertThat(set.size(), is(equalTo(objects.length)));
+		for (Object o : objects) {
+			assertThat(set.contains(o), is(equalTo(true)));
+			assertThat(set.add(o), is(equalTo(false)));
+		}
+	}
+	
+	@Test
+	public void testClear() {
+		IdentitySet set = new IdentitySet(100);
+		Object o = new Object();
+		set.add(o);
+		set.add(null);
+		
+		set.clear();
+		
+		assertThat(set.size(), is(equalTo(0)));
+		assertThat(set.contains(o), is(equalTo(false)));
+		assertThat(set.contains(null), is(equalTo(false)));
+		assertThat(set.add(o), is(equalTo(true)));
+	}
+}
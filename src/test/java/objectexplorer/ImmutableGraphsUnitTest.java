@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * BEGIN COPYRIGHT NOTICE
+ * 
+ * Copyright [2011] [Rodrigo Lemos]
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * END COPYRIGHT NOTICE
+ ******************************************************************************/
+package objectexplorer;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import objectexplorer.Inodes.File;
+
+import org.junit.Test;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+
+public class ImmutableGraphsUnitTest {
+	
+	@Test
+	public void testRegisterInstance() {
+		File file = new File();
+		file.contents = new byte[100];
+		long bytes = MemoryMeasurer.measureBytes(file);
+		
+		ImmutableGraphs.registerInstance(file);
+		
+		assertTrue(ImmutableGraphs.isRegistered(file));
+		assertFalse(ImmutableGraphs.isRegistered(new File()));
+		assertThat(MemoryMeasurer.measureBytes(file), is(equalTo(bytes)));
+		// the graph is not explored again
+		file.contents = new byte[1000];
+		assertThat(MemoryMeasurer.measureBytes(file), is(equalTo(bytes)));
+	}
+	
+	@Test
+	public void testRegisterClass() {
+		Table table = new Table();
+		table.rows = new String[] { "first", "second" };
+		long bytes = MemoryMeasurer.measureBytes(table);
+		
+		ImmutableGraphs.registerClass(Table.class);
+		
+		assertTrue(ImmutableGraphs.isRegistered(table));
+		assertThat(MemoryMeasurer.measureBytes(table), is(equalTo(bytes)));
+		table.rows = new String[0];
+		assertThat(MemoryMeasurer.measureBytes(table), is(equalTo(bytes)));
+	}
+	
+	@Test
+	public void testChargeSharedObjectsOnce() {
+		byte[] shared = new byte[100];
+		File file = new File();
+		file.contents = shared;
+		ImmutableGraphs.registerInstance(file);
+		Object[] both = new Object[] { shared, file, file };
+		
+		assertThat(MemoryMeasurer.measureBytes(both), is(equalTo(
+				MemoryMeasurer.measureBytes(new Object[3]) + MemoryMeasurer.measureBytes(file))));
+		assertThat(MemoryMeasurer.measureUnion(Arrays.asList(file, shared)).getBytesFirstReachedPerRoot(),
+				is(equalTo(Arrays.asList(MemoryMeasurer.measureBytes(file), 0L))));
+	}
+	
+	@Test
+	public void testMeasureWithPredicate() {
+		Lookup table = new Lookup();
+		table.rows = new String[] { "first", "second" };
+		Predicate<Object> notStrings = Predicates.not(Predicates.instanceOf(String.class));
+		long bytes = MemoryMeasurer.measureBytes(table, notStrings);
+		
+		ImmutableGraphs.registerInstance(table);
+		MemoryMeasurer.measureBytes(table);
+		
+		assertThat(MemoryMeasurer.measureBytes(table, notStrings), is(equalTo(bytes)));
+		assertThat(MemoryMeasurer.measureUnion(Arrays.asList(table), notStrings).getTotalBytes(),
+				is(equalTo(bytes)));
+		Exploration<Long> measurement = MemoryMeasurer.newMeasurement(table, notStrings);
+		while (!measurement.run(1)) {}
+		assertThat(measurement.result(), is(equalTo(bytes)));
+	}
+	
+	private static class Table {
+		String[] rows;
+	}
+	
+	private static class Lookup {
+		String[] rows;
+	}
+}
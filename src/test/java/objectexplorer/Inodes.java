@@ -0,0 +1,40 @@
+/*******************************************************************************
+ * BEGIN COPYRIGHT NOTICE
+ * 
+ * Copyright [2011] [Rodrigo Lemos]
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * END COPYRIGHT NOTICE
+ ******************************************************************************/
+package objectexplorer;
+
+/**
+ * A tiny file system, whose object graphs the tests explore and measure.
+ */
+final class Inodes {
+	private Inodes() {}
+	
+	static class Inode {
+		
+	}
+	
+	static class Folder extends Inode {
+		public Inode[] contents;
+	}
+	
+	static class File extends Inode {
+		public byte[] contents;
+		public int created;
+	}
+}
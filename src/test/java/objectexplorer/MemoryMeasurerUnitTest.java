@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * BEGIN COPYRIGHT NOTICE
+ * 
+ * Copyright [2011] [Rodrigo Lemos]
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * END COPYRIGHT NOTICE
+ ******************************************************************************/
+package objectexplorer;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import objectexplorer.Inodes.File;
+import objectexplorer.Inodes.Folder;
+import objectexplorer.Inodes.Inode;
+import objectexplorer.MemoryMeasurer.ElementBytes;
+import objectexplorer.MemoryMeasurer.UnionBytes;
+
+import org.junit.Test;
+
+public class MemoryMeasurerUnitTest {
+	
+	@Test
+	public void testMeasureUnion() {
+		File shared = new File();
+		shared.contents = new byte[100];
+		Folder first = new Folder();
+		first.contents = new Inode[] { shared };
+		Folder second = new Folder();
+		second.contents = new Inode[] { shared, new File() };
+		
+		UnionBytes union = MemoryMeasurer.measureUnion(Arrays.asList(first, second, null, first));
+		
+		List<Long> perRoot = union.getBytesFirstReachedPerRoot();
+		assertThat(perRoot.size(), is(equalTo(4)));
+		assertThat(perRoot.get(0), is(equalTo(MemoryMeasurer.measureBytes(first))));
+		assertThat(perRoot.get(1), is(equalTo(MemoryMeasurer.measureBytes(second)
+				- MemoryMeasurer.measureBytes(shared))));
+		assertThat(perRoot.get(2), is(equalTo(0L)));
+		assertThat(perRoot.get(3), is(equalTo(0L)));
+		assertThat(union.getTotalBytes(), is(equalTo(MemoryMeasurer.measureBytes(first)
+				+ MemoryMeasurer.measureBytes(second) - MemoryMeasurer.measureBytes(shared))));
+	}
+	
+	@Test
+	public void testMeasureElements() {
+		File shared = new File();
+		shared.contents = new byte[100];
+		Folder first = new Folder();
+		first.contents = new Inode[] { shared };
+		Folder second = new Folder();
+		second.contents = new Inode[] { shared, new File() };
+		
+		ElementBytes elements = MemoryMeasurer.measureElements(Arrays.asList(first, second, null));
+		
+		long sharedBytes = MemoryMeasurer.measureBytes(shared);
+		assertThat(elements.size(), is(equalTo(3)));
+		assertThat(elements.getExclusiveBytes(0), is(equalTo(MemoryMeasurer.measureBytes(first)
+				- sharedBytes)));
+		assertThat(elements.getSharedBytes(0), is(equalTo(sharedBytes)));
+		assertThat(elements.getExclusiveBytes(1), is(equalTo(MemoryMeasurer.measureBytes(second)
+				- sharedBytes)));
+		assertThat(elements.getSharedBytes(1), is(equalTo(0L)));
+		assertThat(elements.getExclusiveBytes(2), is(equalTo(0L)));
+		assertThat(elements.getSharedBytes(2), is(equalTo(0L)));
+		assertThat(elements.getTotalBytes(), is(equalTo(MemoryMeasurer.measureUnion(
+				Arrays.asList(first, second)).getTotalBytes())));
+	}
+	
+	@Test
+	public void testMeasureEntries() {
+		File shared = new File();
+		shared.contents = new byte[100];
+		Map<String, File> map = new LinkedHashMap<String, File>();
+		map.put("first", shared);
+		map.put("second", shared);
+		map.put("third", new File());
+		
+		ElementBytes entries = MemoryMeasurer.measureEntries(map);
+		
+		assertThat(entries.size(), is(equalTo(3)));
+		assertThat(entries.getExclusiveBytes(), is(equalTo(new long[] {
+				MemoryMeasurer.measureBytes("first"),
+				MemoryMeasurer.measureBytes("second"),
+				MemoryMeasurer.measureBytes("third") + MemoryMeasurer.measureBytes(new File()) })));
+		assertThat(entries.getSharedBytes(), is(equalTo(new long[] {
+				MemoryMeasurer.measureBytes(shared), 0, 0 })));
+	}
+}
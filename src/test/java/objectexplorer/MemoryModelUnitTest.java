@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * BEGIN COPYRIGHT NOTICE
+ * 
+ * Copyright [2011] [Rodrigo Lemos]
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * END COPYRIGHT NOTICE
+ ******************************************************************************/
+package objectexplorer;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import objectexplorer.Inodes.File;
+import objectexplorer.Inodes.Folder;
+import objectexplorer.Inodes.Inode;
+import objectexplorer.MemoryModel.ObjectHeaders;
+import objectexplorer.ObjectGraphMeasurer.Footprint;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Table;
+
+public class MemoryModelUnitTest {
+	private static final MemoryModel compressed = new MemoryModel(12, 16, 4, 8);
+	private static final MemoryModel uncompressed = new MemoryModel(16, 20, 8, 8);
+	
+	@Test
+	public void testInstanceSize() {
+		assertThat(compressed.sizeOfInstance(Object.class), is(equalTo(16L)));
+		assertThat(compressed.sizeOfInstance(Inode.class), is(equalTo(16L)));
+		// header + reference + int
+		assertThat(compressed.sizeOfInstance(File.class), is(equalTo(24L)));
+		assertThat(uncompressed.sizeOfInstance(File.class), is(equalTo(32L)));
+	}
+	
+	@Test
+	public void testArraySize() {
+		assertThat(compressed.sizeOfArray(byte[].class, 0), is(equalTo(16L)));
+		assertThat(compressed.sizeOfArray(byte[].class, 9), is(equalTo(32L)));
+		assertThat(compressed.sizeOfArray(Object[].class, 3), is(equalTo(32L)));
+		// long elements are aligned past the length
+		assertThat(uncompressed.sizeOfArray(long[].class, 1), is(equalTo(32L)));
+		assertThat(uncompressed.sizeOfArray(Object[].class, 1), is(equalTo(32L)));
+	}
+	
+	@Test
+	public void testShallowSize() {
+		assertThat(compressed.shallowSizeOf(new File()), is(equalTo(24L)));
+		assertThat(compressed.shallowSizeOf(new int[5]), is(equalTo(40L)));
+	}
+	
+	@Test
+	public void testCurrentModelMatchesItsEstimates() {
+		MemoryModel current = MemoryModel.current();
+		MemoryModel estimating = new MemoryModel(current.getObjectHeaderSize(),
+				current.getArrayHeaderSize(), current.getReferenceSize(),
+				current.getObjectAlignment());
+		
+		for (Class<?> type : new Class<?>[] { Object.class, Inode.class, Folder.class, File.class }) {
+			assertThat(current.sizeOfInstance(type), is(equalTo(estimating.sizeOfInstance(type))));
+		}
+		for (Class<?> type : new Class<?>[] { byte[].class, int[].class, Object[].class }) {
+			for (int length = 0; length < 20; length++) {
+				assertThat(current.sizeOfArray(type, length),
+						is(equalTo(estimating.sizeOfArray(type, length))));
+			}
+		}
+	}
+	
+	@Test
+	public void testCurrentModelMatchesAgent() {
+		try {
+			MemoryMeasurer.attachAgent();
+		} catch (IllegalStateException e) {
+			// e.g. without -Djdk.attach.allowAttachSelf=true
+			Assume.assumeNoException(e);
+		}
+		
+		for (Object structure : populatedDataStructures(100)) {
+			assertThat(structure.getClass().getName(),
+					MemoryMeasurer.measureBytes(structure, MemoryModel.current()),
+					is(equalTo(MemoryMeasurer.measureBytes(structure))));
+		}
+	}
+	
+	// some of the data structures of ElementCostOfDataStructures
+	private static List<Object> populatedDataStructures(int size) {
+		Map<Integer, String> hashMap = new HashMap<Integer, String>();
+		Multimap<Integer, String> multimap = HashMultimap.create();
+		Multiset<Integer> multiset = HashMultiset.create();
+		Table<Integer, Integer, String> table = HashBasedTable.create();
+		for (int i = 0; i < size; i++) {
+			String value = "value" + i;
+			hashMap.put(i, value);
+			multimap.put(i % 10, value);
+			multiset.add(i % 10);
+			table.put(i % 10, i, value);
+		}
+		List<Object> structures = new ArrayList<Object>();
+		structures.add(hashMap);
+		structures.add(new LinkedHashMap<Integer, String>(hashMap));
+		structures.add(new TreeMap<Integer, String>(hashMap));
+		structures.add(new ConcurrentHashMap<Integer, String>(hashMap));
+		structures.add(new ArrayList<String>(hashMap.values()));
+		structures.add(new LinkedList<String>(hashMap.values()));
+		structures.add(new HashSet<Integer>(hashMap.keySet()));
+		structures.add(ImmutableMap.copyOf(hashMap));
+		structures.add(ImmutableSortedMap.copyOf(hashMap));
+		structures.add(ImmutableList.copyOf(hashMap.values()));
+		structures.add(multimap);
+		structures.add(multiset);
+		structures.add(table);
+		return structures;
+	}
+	
+	@Test
+	public void testCurrentModelAlignsSizes() {
+		MemoryModel current = MemoryModel.current();
+		
+		assertThat(current.shallowSizeOf(new File()) % current.getObjectAlignment(), is(equalTo(0L)));
+		assertThat(current.shallowSizeOf(new char[7]) % current.getObjectAlignment(), is(equalTo(0L)));
+	}
+	
+	@Test
+	public void testHotSpotModels() {
+		assertThat(MemoryModel.hotSpot64Bit(true, ObjectHeaders.COMPRESSED_CLASS_POINTERS, 8)
+				.sizeOfInstance(File.class), is(equalTo(compressed.sizeOfInstance(File.class))));
+		assertThat(MemoryModel.hotSpot64Bit(false, ObjectHeaders.UNCOMPRESSED_CLASS_POINTERS, 8)
+				.sizeOfInstance(File.class), is(equalTo(uncompressed.sizeOfInstance(File.class))));
+		assertThat(MemoryModel.hotSpot64Bit(true, ObjectHeaders.COMPACT, 8)
+				.sizeOfInstance(Object.class), is(equalTo(8L)));
+		assertThat(MemoryModel.hotSpot32Bit(8).sizeOfArray(int[].class, 1), is(equalTo(16L)));
+	}
+	
+	@Test
+	public void testProjectBytes() {
+		Folder root = ObjectGraphMeasurerUnitTest.newTree(4, 6);
+		Footprint footprint = ObjectGraphMeasurer.measure(root);
+		
+		for (MemoryModel model : new MemoryModel[] {
+				compressed, uncompressed, MemoryModel.hotSpot32Bit(8),
+				MemoryModel.hotSpot64Bit(true, ObjectHeaders.COMPACT, 8),
+				MemoryModel.hotSpot64Bit(true, ObjectHeaders.COMPRESSED_CLASS_POINTERS, 32) }) {
+			long measured = MemoryMeasurer.measureBytes(root, model);
+			long projected = model.projectBytes(footprint);
+			assertTrue(model + ": " + projected + " vs " + measured,
+					Math.abs(projected - measured) < measured / 20);
+		}
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testAlignmentMustBePowerOfTwo() {
+		new MemoryModel(12, 16, 4, 12);
+	}
+}
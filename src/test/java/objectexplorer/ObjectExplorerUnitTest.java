@@ -34,9 +34,22 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 
+import java.lang.ref.SoftReference;
+import java.lang.reflect.Field;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 
+import objectexplorer.Edge.Reachability;
+import objectexplorer.Inodes.File;
+import objectexplorer.Inodes.Folder;
+import objectexplorer.Inodes.Inode;
 import objectexplorer.ObjectExplorer.Feature;
 import objectexplorer.ObjectVisitor.Traversal;
 
@@ -326,19 +339,325 @@ public class ObjectExplorerUnitTest {
 		inOrder.verify(visitor).result();
 		verifyNoMoreInteractions(visitor);
 	}
-}
 
-/*****************************************************************************/
+	@Test
+	public void testExploreWithEdgeVisitor() {
+		Folder root = new Folder();
+		File file = new File();
+		
+		root.contents = new Inode[] { file, null };
+		file.contents = new byte[] { 0x0, 0x1 };
+		file.created = 0x42;
+		
+		EdgeVisitor<List<String>> visitor = new EdgeVisitor<List<String>>() {
+			private final List<String> edges = new ArrayList<String>();
+			
+			public Traversal visit(Edge edge) {
+				StringBuilder sb = new StringBuilder();
+				if (edge.isRoot()) {
+					assertThat(edge.getParent(), is(nullValue()));
+					sb.append("root");
+				} else if (edge.isThroughField()) {
+					sb.append(edge.getField().getName());
+				} else {
+					assertThat(edge.isThroughArrayIndex(), is(equalTo(true)));
+					sb.append("[").append(edge.getArrayIndex()).append("]");
+				}
+				sb.append(":").append(edge.getValueType().getSimpleName());
+				edges.add(sb.toString());
+				return Traversal.EXPLORE;
+			}
+			
+			public List<String> result() {
+				return edges;
+			}
+		};
+		
+		assertThat(
+				ObjectExplorer.exploreObject(root, visitor, EnumSet.allOf(Feature.class)),
+				is(equalTo(Arrays.asList(
+						"root:Folder",
+						"contents:Inode[]",
+						"[1]:Inode",
+						"[0]:Inode",
+						"created:int",
+						"contents:byte[]",
+						"[1]:byte",
+						"[0]:byte"
+					)))
+			);
+	}
 
-class Inode {
+	@Test
+	public void testVisitNullsAndPrimitivesInDeclarationOrder() {
+		EdgeVisitor<List<String>> visitor = new EdgeVisitor<List<String>>() {
+			private final List<String> fields = new ArrayList<String>();
+			
+			public Traversal visit(Edge edge) {
+				if (edge.isThroughField()) fields.add(edge.getField().getName());
+				return Traversal.EXPLORE;
+			}
+			
+			public List<String> result() {
+				return fields;
+			}
+		};
+		
+		assertThat(
+				ObjectExplorer.exploreObject(new Stamp(), visitor, EnumSet.of(Feature.VISIT_NULL, Feature.VISIT_PRIMITIVES)),
+				is(equalTo(Arrays.asList("created", "owner", "modified")))
+			);
+	}
 	
-}
+	@Test
+	public void testExplorePrimitiveArray() {
+		long[] root = new long[] { 7L, 11L, 13L };
+		
+		EdgeVisitor<List<Object>> visitor = new EdgeVisitor<List<Object>>() {
+			private final List<Object> values = new ArrayList<Object>();
+			
+			public Traversal visit(Edge edge) {
+				values.add(edge.getValue());
+				return Traversal.EXPLORE;
+			}
+			
+			public List<Object> result() {
+				return values;
+			}
+		};
+		
+		assertThat(
+				ObjectExplorer.exploreObject(root, visitor, EnumSet.of(Feature.VISIT_PRIMITIVES)),
+				is(equalTo(Arrays.<Object>asList(root, 13L, 11L, 7L)))
+			);
+	}
 
-class Folder extends Inode {
-	public Inode[] contents;
-}
+	@Test
+	public void testExplorePrimitiveArrayWithoutVisitingPrimitives() {
+		ObjectVisitor<Object> visitor = mock(ObjectVisitor.class);
+		
+		when(visitor.visit((Chain)anyObject())).thenReturn(Traversal.EXPLORE);
+		
+		byte[] root = new byte[1024];
+		ObjectExplorer.exploreObject(root, visitor, EnumSet.of(Feature.VISIT_NULL));
+		
+		verify(visitor).visit((Chain)argThat(hasProperty("value", sameInstance(root))));
+		verify(visitor).result();
+		verifyNoMoreInteractions(visitor);
+	}
+
+	@Test
+	public void testExplorePrimitivesInBulk() throws Exception {
+		ObjectVisitor<Object> visitor = mock(ObjectVisitor.class,
+				withSettings().extraInterfaces(PrimitiveVisitor.class));
+		
+		when(visitor.visit((Chain)anyObject())).thenReturn(Traversal.EXPLORE);
+		
+		File root = new File();
+		root.contents = new byte[1024];
+		ObjectExplorer.exploreObject(root, visitor, EnumSet.of(Feature.VISIT_PRIMITIVES));
+		
+		verify(visitor).visit((Chain)argThat(hasProperty("value", sameInstance(root))));
+		verify(visitor).visit((Chain)argThat(hasProperty("value", sameInstance(root.contents))));
+		verify((PrimitiveVisitor) visitor).visitPrimitiveField(root,
+				File.class.getDeclaredField("created"), int.class);
+		verify((PrimitiveVisitor) visitor).visitPrimitiveArray(root.contents, byte.class, 1024);
+		verify(visitor).result();
+		verifyNoMoreInteractions(visitor);
+	}
+	
+	@Test
+	public void testExplorePrimitiveArrayInBulk() {
+		long[] root = new long[] { 7L, 11L, 13L };
+		PrimitiveCountingVisitor visitor = new PrimitiveCountingVisitor();
+		
+		assertThat(ObjectExplorer.exploreObject(root, visitor, EnumSet.of(Feature.VISIT_PRIMITIVES)),
+				is(equalTo(1)));
+		assertThat(visitor.primitives, is(equalTo(3L)));
+	}
+
+	@Test
+	public void testExploreInSlices() {
+		Folder root = ObjectGraphMeasurerUnitTest.newTree(3, 4);
+		
+		int expected = ObjectExplorer.exploreObject(root, new CountingVisitor());
+		
+		Exploration<Integer> exploration = ObjectExplorer.newExploration(
+				root, new CountingVisitor(), EnumSet.noneOf(Feature.class));
+		
+		int slices = 0;
+		while (!exploration.isDone()) {
+			assertThat(exploration.result(), is(equalTo(slices * 10)));
+			exploration.run(10);
+			slices++;
+		}
+		assertThat(exploration.result(), is(equalTo(expected)));
+		assertThat(slices, is(equalTo((expected + 9) / 10)));
+	}
+	
+	@Test
+	public void testExploreWideArrayLazily() {
+		Object[] root = new Object[1000];
+		for (int i = 0; i < root.length; i++) {
+			root[i] = new Object();
+		}
+		
+		Exploration<Integer> exploration = ObjectExplorer.newExploration(
+				root, new CountingVisitor(), EnumSet.noneOf(Feature.class));
+		exploration.run(1);
+		assertThat(exploration.pending(), is(equalTo(1000L)));
+		
+		Exploration<Integer> other = exploration.split(new CountingVisitor());
+		assertThat(exploration.pending(), is(equalTo(500L)));
+		assertThat(other.pending(), is(equalTo(500L)));
+		
+		exploration.run(1);
+		assertThat(exploration.pending(), is(equalTo(499L)));
+		assertThat(exploration.complete() + other.complete(), is(equalTo(1 + root.length)));
+	}
+
+	@Test
+	public void testExploreBreadthFirst() {
+		Folder root = ObjectGraphMeasurerUnitTest.newTree(2, 3);
+		
+		List<Integer> depths = ObjectExplorer.exploreObject(root, new DepthRecordingVisitor(),
+				EnumSet.of(Feature.BREADTH_FIRST));
+		
+		assertThat(depths.size(), is(equalTo(
+				ObjectExplorer.exploreObject(root, new CountingVisitor()))));
+		for (int i = 1; i < depths.size(); i++) {
+			assertThat(depths.get(i - 1) <= depths.get(i), is(true));
+		}
+	}
+
+	@Test
+	public void testExploreUpToMaxDepth() {
+		Folder root = new Folder();
+		File file = new File();
+		file.contents = new byte[] { 1, 2 };
+		root.contents = new Inode[] { file, null };
+		
+		List<Integer> depths = ObjectExplorer.exploreObject(root, new DepthRecordingVisitor(),
+				EnumSet.of(Feature.VISIT_NULL), 2);
+		
+		// root, contents, contents[1] (null) and contents[0], but not the bytes
+		assertThat(depths, is(equalTo(Arrays.asList(0, 1, 2, 2))));
+	}
+
+	@Test
+	public void testExploreRootOnly() {
+		Folder root = ObjectGraphMeasurerUnitTest.newTree(2, 3);
+		
+		List<Integer> depths = ObjectExplorer.exploreObject(root, new DepthRecordingVisitor(),
+				EnumSet.of(Feature.BREADTH_FIRST, Feature.VISIT_NULL, Feature.VISIT_PRIMITIVES), 0);
+		
+		assertThat(depths, is(equalTo(Arrays.asList(0))));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testExploreNegativeMaxDepth() {
+		ObjectExplorer.exploreObject(new Folder(), new CountingVisitor(),
+				EnumSet.noneOf(Feature.class), -1);
+	}
 
-class File extends Inode {
-	public byte[] contents;
-	public int created;
+	@Test
+	public void testExploreTrackingReachability() {
+		Object strong = new Object();
+		Object soft = new Object();
+		Object weak = new Object();
+		Object softThenWeak = new Object();
+		Object[] root = new Object[] {
+				new WeakReference<Object>(strong),
+				new SoftReference<Object>(soft),
+				new WeakReference<Object>(weak),
+				new SoftReference<Object>(new WeakReference<Object>(softThenWeak)),
+				strong,
+				new WeakReference<Object>(soft),
+		};
+		
+		Map<Object, Reachability> reachabilities = ObjectExplorer.exploreObject(root,
+				new ReachabilityRecordingVisitor(), EnumSet.of(Feature.TRACK_REACHABILITY));
+		
+		assertThat(reachabilities.get(root), is(Reachability.STRONG));
+		assertThat(reachabilities.get(strong), is(Reachability.STRONG));
+		assertThat(reachabilities.get(soft), is(Reachability.SOFT));
+		assertThat(reachabilities.get(weak), is(Reachability.WEAK));
+		assertThat(reachabilities.get(softThenWeak), is(Reachability.WEAK));
+	}
+
+	@Test
+	public void testExploreWithoutTrackingReachability() {
+		Object weak = new Object();
+		Object[] root = new Object[] { new WeakReference<Object>(weak) };
+		
+		Map<Object, Reachability> reachabilities = ObjectExplorer.exploreObject(root,
+				new ReachabilityRecordingVisitor());
+		
+		assertThat(reachabilities.get(weak), is(Reachability.STRONG));
+	}
+
+	/**
+	 * Records the reachability of the first visit of each object.
+	 */
+	static class ReachabilityRecordingVisitor implements EdgeVisitor<Map<Object, Reachability>> {
+		private final Map<Object, Reachability> reachabilities =
+			new IdentityHashMap<Object, Reachability>();
+		
+		public Traversal visit(Edge edge) {
+			Object value = edge.getValue();
+			if (value instanceof Class<?> || reachabilities.containsKey(value)) {
+				return Traversal.SKIP;
+			}
+			reachabilities.put(value, edge.getReachability());
+			return Traversal.EXPLORE;
+		}
+		
+		public Map<Object, Reachability> result() {
+			return reachabilities;
+		}
+	}
+
+	static class Stamp {
+		int created;
+		Object owner;
+		long modified;
+	}
+	
+	static class DepthRecordingVisitor implements EdgeVisitor<List<Integer>> {
+		private final List<Integer> depths = new ArrayList<Integer>();
+		
+		public Traversal visit(Edge edge) {
+			depths.add(edge.getDepth());
+			return Traversal.EXPLORE;
+		}
+		
+		public List<Integer> result() {
+			return depths;
+		}
+	}
+
+	static class PrimitiveCountingVisitor extends CountingVisitor implements PrimitiveVisitor {
+		long primitives;
+		
+		public void visitPrimitiveField(Object object, Field field, Class<?> primitiveType) {
+			primitives++;
+		}
+		
+		public void visitPrimitiveArray(Object array, Class<?> componentType, int length) {
+			primitives += length;
+		}
+	}
+	
+	static class CountingVisitor implements EdgeVisitor<Integer> {
+		private int count;
+		
+		public Traversal visit(Edge edge) {
+			count++;
+			return Traversal.EXPLORE;
+		}
+		
+		public Integer result() {
+			return count;
+		}
+	}
 }
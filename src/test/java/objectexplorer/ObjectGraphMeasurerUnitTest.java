@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * BEGIN COPYRIGHT NOTICE
+ * 
+ * Copyright [2011] [Rodrigo Lemos]
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * END COPYRIGHT NOTICE
+ ******************************************************************************/
+package objectexplorer;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.ForkJoinPool;
+
+import objectexplorer.Inodes.File;
+import objectexplorer.Inodes.Folder;
+import objectexplorer.Inodes.Inode;
+import objectexplorer.ObjectGraphMeasurer.Footprint;
+
+import org.junit.Test;
+
+public class ObjectGraphMeasurerUnitTest {
+	
+	@Test
+	public void testMeasureFolder() {
+		Folder root = new Folder();
+		File file = new File();
+		
+		root.contents = new Inode[] { file, null, file };
+		file.contents = new byte[] { 0x0, 0x1, 0x2 };
+		
+		Footprint footprint = ObjectGraphMeasurer.measure(root);
+		
+		// root, contents array, file, file contents
+		assertThat(footprint.getObjects(), is(equalTo(4)));
+		// root.contents, 3 array elements, file.contents
+		assertThat(footprint.getReferences(), is(equalTo(5)));
+		assertThat(footprint.getPrimitives().count(byte.class), is(equalTo(3)));
+		assertThat(footprint.getPrimitives().count(int.class), is(equalTo(1)));
+	}
+	
+	@Test
+	public void testMeasurePrimitiveArrays() {
+		Object[] arrays = new Object[] { new int[1000000], new long[3], new int[5] };
+		
+		Footprint footprint = ObjectGraphMeasurer.measure(arrays);
+		
+		assertThat(footprint.getObjectCount(), is(equalTo(4L)));
+		assertThat(footprint.getReferenceCount(), is(equalTo(3L)));
+		assertThat(footprint.getPrimitiveCount(int.class), is(equalTo(1000005L)));
+		assertThat(footprint.getPrimitiveCount(long.class), is(equalTo(3L)));
+		assertThat(footprint.getPrimitiveCount(byte.class), is(equalTo(0L)));
+		assertThat(footprint.getPrimitives().count(int.class), is(equalTo(1000005)));
+	}
+	
+	@Test
+	public void testMeasureNull() {
+		Footprint footprint = ObjectGraphMeasurer.measure(null);
+		
+		assertThat(footprint.getObjects(), is(equalTo(0)));
+		assertThat(footprint.getReferences(), is(equalTo(0)));
+	}
+	
+	@Test
+	public void testParallelMeasureMatchesSequential() {
+		Folder root = newTree(6, 5);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			Footprint sequential = ObjectGraphMeasurer.measure(root);
+			Footprint parallel = ObjectGraphMeasurer.measure(root, pool);
+			
+			assertThat(parallel.getObjects(), is(equalTo(sequential.getObjects())));
+			assertThat(parallel.getReferences(), is(equalTo(sequential.getReferences())));
+			assertThat(parallel.getPrimitives(), is(equalTo(sequential.getPrimitives())));
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * Builds a tree of folders, whose leaves share a single file.
+	 */
+	static Folder newTree(int depth, int fanOut) {
+		File shared = new File();
+		shared.contents = new byte[64];
+		return newTree(depth, fanOut, shared);
+	}
+	
+	private static Folder newTree(int depth, int fanOut, File shared) {
+		Folder folder = new Folder();
+		folder.contents = new Inode[fanOut];
+		for (int i = 0; i < fanOut; i++) {
+			if (depth == 0) {
+				File file = new File();
+				file.contents = i % 2 == 0 ? new byte[i] : null;
+				folder.contents[i] = i == 0 ? shared : file;
+			} else {
+				folder.contents[i] = newTree(depth - 1, fanOut, shared);
+			}
+		}
+		return folder;
+	}
+}
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * BEGIN COPYRIGHT NOTICE
+ * 
+ * Copyright [2011] [Rodrigo Lemos]
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * END COPYRIGHT NOTICE
+ ******************************************************************************/
+package objectexplorer;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import objectexplorer.Inodes.File;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class SharedConstantsUnitTest {
+	
+	@Test
+	public void testWellKnownConstants() {
+		assertTrue(SharedConstants.isSharedConstant(Boolean.TRUE));
+		assertTrue(SharedConstants.isSharedConstant(Integer.valueOf(127)));
+		assertTrue(SharedConstants.isSharedConstant(Collections.emptyList()));
+		assertTrue(SharedConstants.isSharedConstant(ImmutableList.of()));
+		assertFalse(SharedConstants.isSharedConstant(Integer.valueOf(1000)));
+		assertFalse(SharedConstants.isSharedConstant(Integer.valueOf(100000)));
+		assertFalse(SharedConstants.isSharedConstant(null));
+	}
+	
+	@Test
+	public void testMeasureWithoutConstants() {
+		Object[] array = new Object[] { Boolean.FALSE, Integer.valueOf(1), Collections.emptySet() };
+		
+		assertThat(MemoryMeasurer.measureBytes(array), is(equalTo(MemoryMeasurer.measureBytes(new Object[3]))));
+		assertThat(ObjectGraphMeasurer.measure(array).getObjects(), is(equalTo(1)));
+	}
+	
+	@Test
+	public void testRegister() {
+		File constant = new File();
+		File[] files = new File[] { constant };
+		
+		SharedConstants.register(constant);
+		
+		assertTrue(SharedConstants.isSharedConstant(constant));
+		assertThat(MemoryMeasurer.measureBytes(files), is(equalTo(MemoryMeasurer.measureBytes(new File[1]))));
+	}
+}
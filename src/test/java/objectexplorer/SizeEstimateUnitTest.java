@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * BEGIN COPYRIGHT NOTICE
+ * 
+ * Copyright [2011] [Rodrigo Lemos]
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * END COPYRIGHT NOTICE
+ ******************************************************************************/
+package objectexplorer;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class SizeEstimateUnitTest {
+	
+	@Test
+	public void testEstimateWholeCollection() {
+		List<String> list = new ArrayList<String>();
+		for (int i = 0; i < 100; i++) {
+			list.add(Integer.toString(i));
+		}
+		
+		SizeEstimate estimate = MemoryMeasurer.estimateBytes(list, 1);
+		
+		assertTrue(estimate.isExact());
+		assertThat(estimate.getBytes(), is(equalTo(MemoryMeasurer.measureBytes(list))));
+		assertThat(estimate.getLowerBound(), is(equalTo(estimate.getBytes())));
+		assertThat(estimate.getUpperBound(), is(equalTo(estimate.getBytes())));
+		assertThat(estimate.getSampledElements(), is(equalTo(100L)));
+	}
+	
+	@Test
+	public void testEstimateMap() {
+		Map<Integer, int[]> map = new HashMap<Integer, int[]>();
+		for (int i = 0; i < 20000; i++) {
+			map.put(i + 1000, new int[i % 50]);
+		}
+		long bytes = MemoryMeasurer.measureBytes(map);
+		
+		SizeEstimate estimate = MemoryMeasurer.estimateBytes(map, 0.1);
+		
+		assertTrue(estimate.getSampledElements() > 1000 && estimate.getSampledElements() < 3000);
+		assertTrue(estimate.getBackboneBytes() < bytes);
+		// may fail once every million runs or so
+		assertTrue(Math.abs(estimate.getBytes() - bytes) < 3 * (estimate.getUpperBound() - estimate.getBytes()));
+	}
+	
+	@Test
+	public void testEstimateMapWithinRelativeError() {
+		Map<Integer, int[]> map = new HashMap<Integer, int[]>();
+		for (int i = 0; i < 100000; i++) {
+			map.put(i + 1000, new int[i % 50]);
+		}
+		
+		SizeEstimate estimate = MemoryMeasurer.estimateBytesWithin(map, 0.005);
+		
+		assertTrue(estimate.getRelativeError() <= 0.005);
+		assertTrue(estimate.getSampledElements() < 100000);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testEstimateWithoutSampling() {
+		MemoryMeasurer.estimateBytes(new ArrayList<Object>(), 0);
+	}
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * BEGIN COPYRIGHT NOTICE
+ * 
+ * Copyright [2011] [Rodrigo Lemos]
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * END COPYRIGHT NOTICE
+ ******************************************************************************/
+package objectexplorer;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import objectexplorer.Inodes.File;
+import objectexplorer.Inodes.Folder;
+import objectexplorer.Inodes.Inode;
+
+import org.junit.Test;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+
+public class TraversalFilterUnitTest {
+	
+	@Test
+	public void testExcludeInstancesOf() {
+		TraversalFilter filter = TraversalFilter.builder().excludeInstancesOf(Inode.class).build();
+		
+		assertFalse(filter.apply(new File()));
+		assertFalse(filter.apply(new Folder()));
+		assertTrue(filter.apply(new byte[0]));
+		assertTrue(filter.apply(null));
+	}
+	
+	@Test
+	public void testExcludeObjects() {
+		final File excluded = new File();
+		TraversalFilter filter = TraversalFilter.builder()
+				.excludeObjectsUnless(Predicates.not(Predicates.<Object>equalTo(excluded)))
+				.build();
+		
+		assertFalse(filter.apply(excluded));
+		assertTrue(filter.apply(new File()));
+	}
+	
+	@Test
+	public void testMeasureAsInstanceOfPredicate() {
+		Folder root = ObjectGraphMeasurerUnitTest.newTree(3, 4);
+		Predicate<Object> notFiles = Predicates.not(Predicates.instanceOf(File.class));
+		TraversalFilter filter = TraversalFilter.builder().excludeInstancesOf(File.class).build();
+		
+		assertThat(MemoryMeasurer.measureBytes(root, filter),
+				is(equalTo(MemoryMeasurer.measureBytes(root, notFiles))));
+		assertThat(ObjectGraphMeasurer.measure(root, filter).getObjectCount(),
+				is(equalTo(ObjectGraphMeasurer.measure(root, notFiles).getObjectCount())));
+	}
+	
+	@Test
+	public void testExcludeField() {
+		File file = new File();
+		file.contents = new byte[100];
+		TraversalFilter filter = TraversalFilter.builder().excludeField(File.class, "contents").build();
+		
+		assertThat(MemoryMeasurer.measureBytes(file, filter),
+				is(equalTo(MemoryMeasurer.measureBytes(new File()))));
+		// the array itself is not excluded, only what the field references
+		assertThat(MemoryMeasurer.measureBytes(new Object[] { file.contents }, filter),
+				is(equalTo(MemoryMeasurer.measureBytes(new Object[] { new byte[100] }))));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testExcludeUnknownField() {
+		TraversalFilter.builder().excludeField(File.class, "size");
+	}
+}